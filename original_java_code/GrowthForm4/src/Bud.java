@@ -1,15 +1,13 @@
 import java.awt.Color;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
-import quicktime.std.image.NearestPointInfo;
 
 //packet of information inside certain cells.  controls nearby divisions
 public class Bud {
 
    BudType budType;        //which group we belong to
    Cell cell;              //cell we are inside of
-   boolean frozen;         //have we stopped growing?
+   boolean frozen;         //have we stopped growing?  set by freeze()
+   int liveIndex = -1;     //where we are in our type's live buds, or -1
    int fatness;           //up to how many hops from us does a cell divide
    boolean headXYZFlag;    //should we head in some direction?
    XYZ heading;             //heading used if flag is set
@@ -20,10 +18,9 @@ public class Bud {
    int step;                //step in script to perform next. e.g., program counter
    int actCount;            //# acts left in current line of script
    boolean inwardFlag;      //do we create a concavity instead of a bump?  TODO: fix
-   private Cell nextCellToDivide;  //choice of who to split next, or null if haven't chosen
+   Cell nextCellToDivide;   //choice of who to split next, or null if haven't chosen
    boolean sleepMode;        //don't grow even though it is time to grow
    boolean generalMode;      //any cell can grow, not just near bud
-   static Random rnd = new Random();
    static final double COLLISION_DISTANCE = 1.5;   //in 3D
    static final double MAX_RADIUS = 1.8;
    static final double MIN_RADIUS = 0.2;
@@ -53,35 +50,65 @@ public class Bud {
    //do action for script: one growth if set up for it
    //or several set-up lines up until (but not including) a growth
    //step always points to next line to execute
-   public void act(Parser[] ps, GrowthForm gf){
+   public void act(GrowthEngine engine){
       if (actCount > 0){    //in middle of a line of growth
-         if (generalMode) 
-            chooseGeneralVertex();
-         else
-            chooseCell();
-         if (nextCellToDivide == null) return;
-         if (!sleepMode) divideChosenCell();
-         actCount--;
+         growOnce(null);
          return;
       }
-      sleepMode = false;     //after sleeping, restore to awake mode
-      generalMode = false;   //after general growth, restore to bud-based
-      if (step == budType.stepEnd){       //hit end of script.  done.
-         frozen = true;                   //is this the right thing to do?
-         return;
-      }
-      if (ps[step].getCommandWord().equals("grow") || 
-          ps[step].getCommandWord().equals("sleep") ||
-          ps[step].getCommandWord().equals("general")){
-         if (ps[step].getCommandWord().equals("sleep")) sleepMode = true;
-         if (ps[step].getCommandWord().equals("general")) generalMode = true;
-         actCount = ps[step].getArg1();       //set up for growing
+      Instruction[] code = engine.code;
+      while (true){           //set-up lines, while alive, until a grow command
+         sleepMode = false;     //after sleeping, restore to awake mode
+         generalMode = false;   //after general growth, restore to bud-based
+         if (step == budType.stepEnd){       //hit end of script.  done.
+            freeze();                        //is this the right thing to do?
+            return;
+         }
+         Instruction in = code[step];
+         if (in.isGrowth()){
+            if (in.op == Instruction.Op.SLEEP) sleepMode = true;
+            if (in.op == Instruction.Op.GENERAL) generalMode = true;
+            actCount = in.arg1;                  //set up for growing
+            step++;
+            return;
+         }
+         engine.execute(in, this);
          step++;
-         return;
+         if (cell == null) return;           //died
       }
-      gf.doParsedCommand(ps[step], this);
-      step++;
-      if (cell != null) act(ps, gf);  //if alive, do more until reach a grow command
+   }
+   
+   //like act, but all of a grow, sleep or general line at once:  set-up
+   //lines first if need be, then divisions until the line's count runs out
+   //or no cell can be chosen.  Cells divided are added to touched, for the
+   //caller to relax afterwards, instead of relaxing after each.
+   //Returns # of divisions, or 1 if there were only set-up lines
+   public int actBatch(GrowthEngine engine, List<Cell> touched){
+      if (actCount == 0) {
+         act(engine);
+         if (actCount == 0 || frozen || cell == null) return 1;
+      }
+      int done = 0;
+      while (actCount > 0 && growOnce(touched)) done++;
+      return Math.max(done, 1);
+   }
+   
+   //one division of the current line of growth, if a cell can be chosen.
+   //touched as for actBatch, or null to relax at once.  true if one was done
+   private boolean growOnce(List<Cell> touched){
+      pickCell();
+      if (nextCellToDivide == null) return false;
+      if (!sleepMode) divideChosenCell(touched);
+      actCount--;
+      return true;
+   }
+   
+   //pick the cell for the next division of the current line, as chooseCell
+   //or chooseGeneralVertex.  nextCellToDivide is null if none can be had
+   void pickCell(){
+      if (generalMode) 
+         chooseGeneralVertex();
+      else
+         chooseCell();
    }
    
    //pick one and remember it
@@ -91,7 +118,7 @@ public class Bud {
          return;
       }
       nextCellToDivide = cell.neighbor(fatness);
-      if (rnd.nextInt(2)==0){             //TODO: Experimental
+      if (cell.form.rnd.nextInt(2)==0){   //TODO: Experimental
          Cell better = nextCellToDivide;  //neighboring cell with larger n() is better
          for (Cell c : nextCellToDivide.adj) 
             if (c.n() > better.n()) better = c;
@@ -104,20 +131,19 @@ public class Bud {
       if (collisionCheckFlag){
          Cell collide = nextCellToDivide.collisionCheck(COLLISION_DISTANCE);
          if (collide!=null){          //collision course.  freeze
-            frozen=true;
+            freeze();
             nextCellToDivide=null;
          }       
       }
    }
    
    //create blob by n steps of general growth
-   void makeBlob(int n, GrowthForm gf){
+   void makeBlob(int n, GrowthEngine engine){
       for (int i = 0; i<n; i++){
          chooseGeneralVertex();
          divideChosenCell();
-         gf.relax();             //hack    TODO: move this stuff
-         gf.maybeGenerateGraphics();  //hack
-         gf.maybeCapture();      //hack
+         engine.relax();
+         engine.afterDivision();  //lets a viewer show each step
       }
    }
    
@@ -127,30 +153,28 @@ public class Bud {
    //Or randomly among the 7s.  If no 7's, randomly next to a 5.
    //Use sparingly for general overall growth and equilibration.
    //Doesn't know about frozen areas, so may cause collisions
+   //The form's valence buckets give the candidates, so no scan is needed
    private Cell generalVertex(){
-      for (Cell c : cell.form.cell)
-         if (c.n() < 5){         //if find a 4
-            int bestN = 0;
-            Cell bestC = null;   //choose adj cell with high n
-            for (Cell cadj : c.adj)
-               if (cadj.n()>bestN){
-                  bestN = cadj.n();
-                  bestC = cadj;
-               }
-            return bestC;
-         }
-      List<Cell> choices = new ArrayList<Cell>();
-      for (Cell c : cell.form.cell) {
-         if (c.n() >= 8) return c;          //first 8 we find
-         if (c.n() >= 7) choices.add(c);    //or a random 7
-      }
-      if (choices.size() > 0) return choices.get(rnd.nextInt(choices.size()));
-      for (Cell c : cell.form.cell) {
-         if (c.n() <= 5) choices.add(c);
+      Form form = cell.form;
+      List<Cell> choices = form.cellsWithValence(4);
+      if (choices.size() > 0){         //if there is a 4
+         int bestN = 0;
+         Cell bestC = null;   //choose adj cell with high n
+         for (Cell cadj : choices.get(0).adj)
+            if (cadj.n()>bestN){
+               bestN = cadj.n();
+               bestC = cadj;
+            }
+         return bestC;
       }
-      if (choices.size() > 0)               //a neighbor of a 4
-         return choices.get(rnd.nextInt(choices.size())).adj.get(0);
-      return cell.form.cell.get(rnd.nextInt(cell.form.cell.size()));  //any
+      choices = form.cellsWithValence(8);
+      if (choices.size() > 0) return choices.get(0);     //any 8
+      choices = form.cellsWithValence(7);                //or a random 7
+      if (choices.size() > 0) return choices.get(form.rnd.nextInt(choices.size()));
+      choices = form.cellsWithValence(5);
+      if (choices.size() > 0)               //a neighbor of a 5
+         return choices.get(form.rnd.nextInt(choices.size())).adj.get(0);
+      return form.cell.get(form.rnd.nextInt(form.cell.size()));  //any
    }
    
    public void chooseGeneralVertex(){
@@ -159,7 +183,8 @@ public class Bud {
    
    //create n initial buds of given type and disperse them
    //designed for use from start bud
-   public void disperse(BudType bt, int n, GrowthForm gf) {
+   public void disperse(BudType bt, int n, GrowthEngine engine) {
+      bt.field(cell.form);                   //so inhibition is looked up
       for (Cell c : cell.form.cell)
          if (n>0 && !c.isBud()){
             bt.createBud(c); 
@@ -168,7 +193,7 @@ public class Bud {
       for (int repeat=0; repeat<25; repeat++)  //spread them out
          for (Bud b : bt.getBuds()){
             b.repel(bt);
-            gf.relax();       //hack
+            engine.relax();
          }
    }
    
@@ -179,11 +204,24 @@ public class Bud {
    
    //divide the chosen cell
    public void divideChosenCell(){
+      divideChosenCell(null);
+   }
+   
+   //same as above, but if touched isn't null the two halves are added to
+   //it and the rest of their neighborhood is left for the caller to relax
+   public void divideChosenCell(List<Cell> touched){
       if (nextCellToDivide==null) return;   
+      double[] out = new double[3];
+      nextCellToDivide.normal(out);           //record outward direction
+      finishDivision(nextCellToDivide.divideTopology(), out, touched);
+   }
+   
+   //the rest of a division, once nextCellToDivide has split off newC:
+   //places, sizes and colors the halves, and moves the bud or its line along.
+   //out is the outward direction at the cell before it split.  touched as
+   //for divideChosenCell
+   void finishDivision(Cell newC, double[] out, List<Cell> touched){
       Cell oldC = nextCellToDivide;
-      XYZ outDirection = oldC.normal();       //record outward direction
-      Cell newC = oldC.divideTopology();
-      
       oldC.setRadiusDontDiffuse(cell.getRadius());   //bud's current radius to each
       newC.setRadiusDontDiffuse(cell.getRadius());   
          
@@ -198,14 +236,20 @@ public class Bud {
          oldC.texture = cell.texture;
       }
       
-      XYZ outward;                        //construct new coords for both
-      if (inwardFlag) outward = XYZ.scale(-cell.getRadius(), outDirection);
-      else outward = XYZ.scale(cell.getRadius(), outDirection);  
-      XYZ newXYZ1 = oldC.avgNeighbors(); 
-      XYZ newXYZ2 = newC.avgNeighbors();
-      oldC.xyz = XYZ.plus(newXYZ1, outward);
-      newC.xyz =  XYZ.plus(newXYZ2, outward); 
-      for (int repeat=0; repeat<2; repeat++) {          //relax the neighborhood
+      double s = inwardFlag ? -cell.getRadius() : cell.getRadius();   //construct new coords for both
+      double[] avg1 = new double[3];
+      double[] avg2 = new double[3];
+      oldC.avgNeighbors(avg1); 
+      newC.avgNeighbors(avg2);
+      oldC.setXYZ(avg1[0] + s*out[0], avg1[1] + s*out[1], avg1[2] + s*out[2]);
+      newC.setXYZ(avg2[0] + s*out[0], avg2[1] + s*out[1], avg2[2] + s*out[2]); 
+      if (touched != null) {      //just settle the halves for now
+         cell.form.springXYZ(oldC);
+         cell.form.springXYZ(newC);
+         touched.add(oldC);
+         touched.add(newC);
+      }
+      else for (int repeat=0; repeat<2; repeat++) {     //relax the neighborhood
          for (Cell u : oldC.adj) cell.form.springXYZ(u);
          for (Cell u : newC.adj) cell.form.springXYZ(u);
       }
@@ -242,7 +286,7 @@ public class Bud {
 
    //surrounding ring become buds of given type, overwrites existing types
    public void ring(BudType bt, int k) {
-      new Ring(cell.region, k, bt);
+      new Ring(cell, k, bt);
    }
    
    //all budless neighbors become buds of given type
@@ -270,8 +314,18 @@ public class Bud {
    //we become a new type
    public void become(BudType bt) {
       Cell ourCell = cell;
-      budType.removeBud(ourCell);
-      bt.createBud(ourCell);
+      synchronized(ourCell.form){          //no one sees the cell without a bud
+         budType.removeBud(ourCell);
+         bt.createBud(ourCell);
+      }
+   }
+
+   //stop growing for good
+   public void freeze() {
+      synchronized(cell.form){
+         frozen = true;
+         budType.freeze(this);
+      }
    }
 
    //rip out our cell's bud object (not just freezing)
@@ -305,21 +359,26 @@ public class Bud {
       cell.texture = new Texture(arg1, arg2, arg3);
    }
  
-   //move bud over to a neighbor if further from nearest of given type
+   //move bud over to a neighbor if further from nearest of given type.
+   //distances come from the type's field, with us taken out if we are one
    public void repel(BudType bt){
+      BudField f = bt.field(cell.form);
+      boolean ours = (budType == bt);
       for (int repeat=0; repeat<3; repeat++){
          Cell oldC = cell;
          Cell bestCell = null;
-         int bestDist = oldC.nearest(bt);
+         if (ours) f.remove(oldC);          //don't count us
+         int bestDist = f.get(oldC);
          for (Cell c : oldC.adj){
             if (!c.isBud()){
-               int dist = c.nearest(bt, oldC);
+               int dist = f.get(c);
                if (dist >= bestDist){
                   bestDist = dist;
                   bestCell = c;
                }
             }
          }
+         if (ours) f.add(oldC);
          if (bestCell != null) bt.moveBud(oldC, bestCell);
       }
    }
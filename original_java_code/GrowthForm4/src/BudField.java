@@ -0,0 +1,131 @@
+import java.util.Arrays;
+import java.util.List;
+
+//hops from every cell to the nearest bud of one type, from one BFS that
+//starts at all of them at once.  Kept up to date as buds come, go and move,
+//as long as the form's topology stays the same; after a division or tube
+//the owner rebuilds it when next asked.  Lets repel, disperse and
+//inhibition look distances up instead of searching for each cell.
+//Indices are positions in form.cell.  Neighbors come from Form.topology()
+public class BudField {
+
+   static final int FAR = Integer.MAX_VALUE;   //no bud can be reached
+
+   private Form form;                  //form we were built on...
+   private int topoCount = -1;         //...and at what topology
+   private int[] dist = new int[0];    //hops to the nearest bud, by cell index
+   private int[] owner = new int[0];   //index of the cell with that bud
+   private int[] queue = new int[0];   //BFS queue of cell indices
+   private long[] seed = new long[0];  //(hops, index) pairs a repair starts from
+
+   //are we up to date for the form as it is now?
+   public boolean isCurrent(Form f){
+      return f == form && f.topoCount == topoCount;
+   }
+
+   //hops from c to the nearest bud, 0 if c has one, FAR if there is none
+   public int get(Cell c){
+      return dist[c.index];
+   }
+
+   //start over from the cells of the given buds
+   public void rebuild(Form f, List<Bud> buds){
+      form = f;
+      topoCount = f.topoCount;
+      int n = f.cell.size();
+      if (dist.length < n){                 //room for every cell
+         int cap = Math.max(64, 2*n);
+         dist = new int[cap];
+         owner = new int[cap];
+         queue = new int[cap];
+      }
+      Arrays.fill(dist, 0, n, FAR);
+      int tail = 0;
+      for (Bud b : buds){
+         int i = b.cell.index;
+         dist[i] = 0;
+         owner[i] = i;
+         queue[tail++] = i;
+      }
+      spread(0, tail);
+   }
+
+   //a bud has appeared in cell c.  only cells now nearer to it change
+   public void add(Cell c){
+      int i = c.index;
+      dist[i] = 0;
+      owner[i] = i;
+      queue[0] = i;
+      spread(0, 1);
+   }
+
+   //the bud in cell c is gone.  The cells it was nearest to form a patch
+   //around it; they are cleared and filled in again from the patch's rim,
+   //whose distances are to other buds and so still right
+   public void remove(Cell c){
+      int s = c.index;
+      if (dist[s] != 0 || owner[s] != s) return;    //not one of ours
+      Topology t = form.topology();
+      dist[s] = FAR;
+      int tail = 0;
+      queue[tail++] = s;
+      for (int head=0; head<tail; head++){         //find and clear the patch
+         int i = queue[head];
+         for (int h=t.start[i]; h<t.start[i+1]; h++){
+            int u = t.to[h];
+            if (owner[u] == s && dist[u] != FAR){
+               dist[u] = FAR;
+               queue[tail++] = u;
+            }
+         }
+      }
+      int nSeed = 0;
+      for (int k=0; k<tail; k++){                   //the rim, nearest first
+         int i = queue[k];
+         for (int h=t.start[i]; h<t.start[i+1]; h++){
+            int u = t.to[h];
+            if (owner[u] != s && dist[u] != FAR){
+               if (nSeed == seed.length) seed = Arrays.copyOf(seed, Math.max(64, 2*nSeed));
+               seed[nSeed++] = ((long) dist[u] << 32) | u;
+            }
+         }
+      }
+      Arrays.sort(seed, 0, nSeed);
+      int head = 0;
+      tail = 0;
+      int k = 0;
+      while (k < nSeed || head < tail){             //BFS, taking rim cells in turn
+         int i;
+         if (head == tail || (k < nSeed && (int) (seed[k] >> 32) <= dist[queue[head]]))
+            i = (int) seed[k++];
+         else i = queue[head++];
+         int d = dist[i] + 1;
+         for (int h=t.start[i]; h<t.start[i+1]; h++){
+            int u = t.to[h];
+            if (d < dist[u]){
+               dist[u] = d;
+               owner[u] = owner[i];
+               queue[tail++] = u;
+            }
+         }
+      }
+   }
+
+   //BFS from the queued cells, lowering distances where a shorter way is found
+   private void spread(int head, int tail){
+      Topology t = form.topology();
+      while (head < tail){
+         int i = queue[head++];
+         int d = dist[i] + 1;
+         for (int h=t.start[i]; h<t.start[i+1]; h++){
+            int u = t.to[h];
+            if (d < dist[u]){
+               dist[u] = d;
+               owner[u] = owner[i];
+               queue[tail++] = u;
+            }
+         }
+      }
+   }
+
+}
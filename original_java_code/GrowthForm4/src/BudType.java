@@ -1,6 +1,6 @@
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 //holds set of buds of one type
 //if name ends in a digit, that is the inhibit distance
@@ -8,7 +8,8 @@ public class BudType {
    
    private String name;            //A, B, C, ...
    private List<Bud> set;          //set of buds of our type
-   static Random rnd = new Random();
+   private List<Bud> live;         //the unfrozen ones, in no order.  Bud.liveIndex says where
+   private BudField field = new BudField();   //hops to our buds, while the topology lasts
    int stepStart;                  //1st step of our part of script
    int stepEnd;                    //1st step after our part of script
    int inhibitDistance;            //no closer than this.  0 means no inhibitions
@@ -16,6 +17,7 @@ public class BudType {
    public BudType(String name) {
       this.name = name;
       set = new ArrayList<Bud>();
+      live = new ArrayList<Bud>();
       stepStart = -1;             //-1 flags no script.  
       stepEnd = -1;
       inhibitDistance = 0;        //set inhibition based on last char if digit
@@ -23,15 +25,21 @@ public class BudType {
       if ("123456789".indexOf(last) >= 0) inhibitDistance = last-'0';  //inhibit          
    }
 
-   //create new bud of this type in given cell
+   //create new bud of this type in given cell.
+   //buds change under the form lock, so the display can read them meanwhile
    public boolean createBud(Cell cell){
       if (cell==null) System.out.println("BT bug 0");
-      if (cell.isBud()) System.out.println("BT bug 1");
-      if (cell.isBud()) return false;
-      if (inhibitDistance>0 && cell.nearest(this)<inhibitDistance) return false;  //inhibit          
-      Bud b = new Bud(this, cell);
-      cell.bud = b;
-      set.add(b);
+      synchronized(cell.form){
+         if (cell.isBud()) System.out.println("BT bug 1");
+         if (cell.isBud()) return false;
+         if (inhibitDistance>0 && nearest(cell)<inhibitDistance) return false;  //inhibit          
+         Bud b = new Bud(this, cell);
+         cell.bud = b;
+         set.add(b);
+         if (field.isCurrent(cell.form)) field.add(cell);
+         b.liveIndex = live.size();
+         live.add(b);
+      }
       return true;          //successful
    }
    
@@ -45,27 +53,63 @@ public class BudType {
    
    //destroy bud
    public void removeBud(Cell c){
-      Bud b = c.bud;
-      if (set.remove(b)) c.bud = null;    //to remove it, it should be in our set   
-      else throw new IllegalArgumentException();
-      b.cell = null;
+      synchronized(c.form){
+         Bud b = c.bud;
+         if (set.remove(b)) c.bud = null;    //to remove it, it should be in our set   
+         else throw new IllegalArgumentException();
+         if (field.isCurrent(c.form)) field.remove(c);
+         freeze(b);
+         b.cell = null;
+      }
+   }
+   
+   //hops from each cell to our nearest bud on form f, rebuilt first if the
+   //form has been divided or tubed since.  Stays current while buds come and go
+   public BudField field(Form f){
+      if (!field.isCurrent(f)) field.rebuild(f, set);
+      return field;
+   }
+   
+   //hops from cell, which isn't a bud, to our nearest bud:  looked up if our
+   //field is current, else searched for, but no further than inhibitDistance
+   private int nearest(Cell cell){
+      if (field.isCurrent(cell.form)) return field.get(cell);
+      return cell.nearest(this, null, inhibitDistance);
+   }
+   
+   //take bud out of the live ones, if it is there.  swaps the last into its place.
+   //the caller holds the form lock
+   void freeze(Bud b){
+      int i = b.liveIndex;
+      if (i < 0) return;
+      if (live.get(i) != b) System.out.println("BT bug 3");
+      Bud last = live.remove(live.size()-1);
+      if (last != b){
+         live.set(i, last);
+         last.liveIndex = i;
+      }
+      b.liveIndex = -1;
    }
    
    //how many are not frozen
    public int countLiveBuds(){
-      int ans = 0;
-      for (Bud b : set) if (!b.frozen) ans++;
-      return ans;
+      return live.size();
+   }
+   
+   //Choose a random unfrozen bud in our set, using the form's random source
+   public Bud chooseNextBudToDivide(SplittableRandom rnd){
+      return chooseNextBudToDivide(rnd, null);
    }
    
-   //Choose a random unfrozen bud in our set
-   public Bud chooseNextBudToDivide(){
-      if (set.size() == 0) return null;
-      if (countLiveBuds() == 0) return null;
-      Bud nextBudToDivide;
-      do{                          //TODO: speed this up
-         nextBudToDivide = set.get(rnd.nextInt(set.size())); 
-      } while (nextBudToDivide.frozen);
+   //same as above, but a bud already in seen isn't looked at again:  null
+   //instead.  Others are added to it.  seen may be null
+   public Bud chooseNextBudToDivide(SplittableRandom rnd, List<Bud> seen){
+      if (live.size() == 0) return null;
+      Bud nextBudToDivide = live.get(rnd.nextInt(live.size()));
+      if (seen != null){
+         if (seen.contains(nextBudToDivide)) return null;
+         seen.add(nextBudToDivide);
+      }
       nextBudToDivide.chooseCell();
       if (nextBudToDivide.getChoosenCell() == null) return null;
       return nextBudToDivide;
@@ -79,9 +123,16 @@ public class BudType {
    //bud transplant
    public void moveBud(Cell oldC, Cell newC) {
       if (!(oldC.isBud() && !newC.isBud())) System.out.println("BT bug 2");
-      newC.bud = oldC.bud;
-      oldC.bud = null;
-      newC.bud.cell = newC;
+      synchronized(newC.form){
+         newC.bud = oldC.bud;
+         oldC.bud = null;
+         newC.bud.cell = newC;
+         BudField f = newC.bud.budType.field;        //the bud's own type, in case it isn't us
+         if (f.isCurrent(newC.form)){
+            f.remove(oldC);
+            f.add(newC);
+         }
+      }
    }
    
 }
@@ -1,13 +1,10 @@
 import java.awt.Color;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
-import java.util.Random;
+import java.util.Set;
 
-//one cell of a form.  Once created, never goes away.
+//one cell of a form.  Goes away only when a tube is made through it (see tube).
 //might contain a bud which controls nearby growth
 //might be told (by a nearby bud) to divide.
 public class Cell {
@@ -15,26 +12,35 @@ public class Cell {
    Form form;                  //our containing form
    Bud bud;                    //GrowthBud inside us, or null if none
    List<Cell> adj;             //adjacent vertices (neighbors) in ccw order
-   Map<Cell, Integer> region;  //neighborhood v's and their hop distance
-   XYZ xyz;                    //position
-   int index;                  //our birth order position (0 based)
+   Region region;              //neighborhood v's and their hop distance
+   int index;                  //our position in form.cell (0 based), or -1 once removed.
+                               //birth order, except a removed cell's slot goes to the last cell
    private double radius;      //ideal cell growSize.  should be approx 0.5
    Texture texture;            //bump shape of cell
    Color color;                //assigned color during growth
-   static Random rnd = new Random();    
+   long voxelKey;              //where form's SpatialGrid has us
+   int valenceBucket = -1;     //where form's valence buckets have us, or -1...
+   int valenceSlot;            //...and at what position in the bucket
       
    //constructor.  Adds the constructed cell to the given form
    Cell(Form form, XYZ xyz) {
+      this(form, xyz.x, xyz.y, xyz.z);
+   }
+   
+   //same as above, position given by coordinates.
+   //the position is kept in the form's x, y, z arrays, at our index
+   Cell(Form form, double x, double y, double z) {
       this.form = form;                //record the surface we are part of
       index = form.cell.size();        //record our position in list
-      this.xyz = xyz;                  //initial position
+      form.addPosition(index, x, y, z);   //initial position
       setColor(Color.yellow);          //default color
       texture = Texture.BUMP;          //default texture
       adj = new ArrayList<Cell>(8);    //no neighbors yet
-      region = new LinkedHashMap<Cell, Integer>();
+      region = new Region();
       radius = 0.5;                    //default for unit length edges
       bud = null;                      //later a bud may be inserted in us
       form.cell.add(this);             //adds us to parent form
+      if (form.grid != null) form.grid.add(this);
    }
    
    //accessor for number of neighbors
@@ -66,7 +72,7 @@ public class Cell {
    //return random cell up to k hops away
    public Cell neighbor(int k){
       if (k==0) return this;
-      if (k==1) return adj.get(rnd.nextInt(adj.size()));
+      if (k==1) return adj.get(form.rnd.nextInt(adj.size()));
       return neighbor(1).neighbor(k-1);    //TODO better way
    }  
    
@@ -82,7 +88,19 @@ public class Cell {
    //Returns the new cell so its parameters can be set
    public Cell divideTopology(){
       synchronized(form){
-         Cell sib = new Cell(form, xyz);     //create our sibling.  Adds to form.
+         Cell sib = split();
+         form.repairAfterSplit(this, sib);          //fix regions near us
+         return sib;
+      }
+   }
+   
+   //divideTopology, except for the regions, which the caller must repair
+   //(see Form.repairAfterSplit) before anything reads them
+   Cell split(){
+      synchronized(form){
+         Cell sib = new Cell(form, x(), y(), z());     //create our sibling.  Adds to form.
+         form.modCount++;
+         form.topoCount++;
          List<Cell> adjOld = adj;            //store old adj list...
          int n = n();                          //  ...and # neighbors
          adj = new ArrayList<Cell>();        //we get a new list
@@ -120,34 +138,14 @@ public class Cell {
             if (m<0) throw new IllegalArgumentException("Bug 3");
             adjOld.get(i).adj.set(m, sib);
          }
-                
-         Map<Cell, Integer> regionOld = region;      //fix regions
-         int maxDepth = form.getRegionR();
-         for (Cell u : regionOld.keySet()) u.region = calcRegion(u, maxDepth);
-         sib.region = calcRegion(sib, maxDepth);
-           
+         form.refile(this);                         //valences that changed
+         form.refile(sib);
+         form.refile(adjOld.get(oppI));
+         form.refile(adjOld.get(minI));
          return sib;
       }
    }
 
-   //BFS to construct local region and hop distances based on topology
-   public static Map<Cell, Integer> calcRegion(Cell v0, int maxDepth) {
-      Map<Cell, Integer> r = new LinkedHashMap<Cell, Integer>();
-      Queue<Cell> Q = new LinkedList<Cell>();
-      r.put(v0, 0);                      //we are dist 0 from us
-      Q.add(v0);                         //maintain queue of v's to do
-      while (!Q.isEmpty()){
-         Cell v = Q.remove();            //dequeue
-         int d = r.get(v);               //dist of known v
-         for (Cell u : v.adj)            //examine neighbors
-            if (r.get(u) == null){       //if new...
-               r.put(u, d+1);            //...it is 1 hop further
-               if (d < maxDepth-1) Q.add(u);  //more to do
-            }
-      }
-      return r;
-   }
-
    //Join two cells with a tube of the cells that surround them
    //increases genus by 1.  The two given cells are removed.
    //cells A and B should be both in front of each other's normal (for a tube)
@@ -164,7 +162,7 @@ public class Cell {
          int iAclosest = -1;                 //find neighbor of A to start stitching with
          double distClosest = Integer.MAX_VALUE;
          for (int i=0; i<n; i++){
-            double dist = A.adj.get(i).xyz.dist2To(B.xyz);
+            double dist = A.adj.get(i).dist2To(B);
             if (dist < distClosest) {
                distClosest = dist;
                iAclosest = i;
@@ -173,7 +171,7 @@ public class Cell {
          int iBclosest = -1;           //find neighbor of B to start stitching with
          distClosest = Integer.MAX_VALUE;
          for (int i=0; i<n; i++){
-            double dist = B.adj.get(i).xyz.dist2To(A.adj.get(iAclosest).xyz);
+            double dist = B.adj.get(i).dist2To(A.adj.get(iAclosest));
             if (dist < distClosest) {
                distClosest = dist;
                iBclosest = i;
@@ -186,6 +184,13 @@ public class Cell {
             cycleA[i] = A.adj.get((iAclosest + i) % n);
             cycleB[i] = B.adj.get((iBclosest - i + n) %n);  
          }
+         Set<Cell> near = new LinkedHashSet<Cell>();   //cells whose regions may change:
+         for (int i=0; i<n; i++){                      //near the rims before...
+            addRegion(near, cycleA[i]);
+            addRegion(near, cycleB[i]);
+         }
+         form.dropFromRegions(A);                      //while regions are still exact
+         form.dropFromRegions(B);
 
          for (int i=0; i<n; i++){              //connect edges of antiprism
             int k = cycleA[i].adj.indexOf(A);
@@ -197,10 +202,23 @@ public class Cell {
             cycleB[i].adj.set(k, cycleA[(i+1) % n]);
             cycleB[i].adj.add(k, cycleA[i]);
          }
+         for (int i=0; i<n; i++){              //each rim cell gained a neighbor
+            form.refile(cycleA[i]);
+            form.refile(cycleB[i]);
+         }
 
          int maxDepth = A.form.getRegionR();               //re-build regions
-         for (Cell u : cycleA) u.region = calcRegion(u, maxDepth);
-         for (Cell u : cycleB) u.region = calcRegion(u, maxDepth);
+         for (Cell u : cycleA) form.calcRegion(u, maxDepth);
+         for (Cell u : cycleB) form.calcRegion(u, maxDepth);
+         for (int i=0; i<n; i++){                      //...or after.  keeps all exact
+            addRegion(near, cycleA[i]);
+            addRegion(near, cycleB[i]);
+         }
+         for (Cell u : cycleA) near.remove(u);         //done already
+         for (Cell u : cycleB) near.remove(u);
+         near.remove(A);
+         near.remove(B);
+         for (Cell u : near) form.calcRegion(u, maxDepth);
 
          for (int repeat=0; repeat<3; repeat++) {          //relax the neighborhood
             for (Cell u : cycleA) A.form.springXYZ(u);
@@ -216,28 +234,21 @@ public class Cell {
       }
    }
    
+   //add the cells of c's region to set
+   private void addRegion(Set<Cell> set, Cell c){
+      for (int i=0; i<c.region.size; i++) set.add(form.cell.get(c.region.index[i]));
+   }
+   
    //distance to nearest bud of given type, not including self, or cell x
    //Cell x can be null to ignore the option
    //returns maxint if no buds of that type exist.  BFS
    public int nearest(BudType bt, Cell x){
-      Map<Cell, Integer> r = new LinkedHashMap<Cell, Integer>();
-      Queue<Cell> Q = new LinkedList<Cell>();
-      r.put(this, 0);                    //we are dist 0 from us
-      Q.add(this);                       //maintain queue of cells to do
-      while (!Q.isEmpty()){
-         Cell c = Q.remove();            //dequeue
-         int d = r.get(c);               //dist of known v
-         for (Cell u : c.adj) {
-            if (u != x){                 //don't count x
-               if (u.isBud() && u.bud.budType==bt) return d+1;
-               if (r.get(u) == null) {      //if new...
-                  r.put(u, d+1);            //...it is 1 hop further
-                  Q.add(u);                 //more to do
-               }
-            }
-         }
-      }
-      return Integer.MAX_VALUE;          //none exist
+      return form.nearestBud(this, bt, x, Integer.MAX_VALUE);
+   }
+   
+   //same as above, but only looks out maxDepth hops:  maxint if none that close
+   public int nearest(BudType bt, Cell x, int maxDepth){
+      return form.nearestBud(this, bt, x, maxDepth);
    }
    
    //same as above, with no x option
@@ -245,16 +256,51 @@ public class Cell {
       return nearest(bt, null);
    }
    
-   //TODO: speed this up by dividing space into regions
    //look for imminent collision, within tolerance, with a cell not in our region. 
    //return null if no collision, or some cell we are too near
+   //uses the form's spatial grid so only nearby cells are looked at
    public Cell collisionCheck(double tol){
-      for (Cell v : form.cell){
-         if (XYZ.mag2(XYZ.minus(xyz, v.xyz)) < tol*tol && region.get(v)==null){
-            return v;
-         }
+      synchronized(form){
+         return form.getGrid().nearOutsideRegion(this, tol);
       }
-      return null;
+   }
+   
+   //our position, from the form's coordinate arrays
+   public double x(){
+      return form.x[index];
+   }
+   public double y(){
+      return form.y[index];
+   }
+   public double z(){
+      return form.z[index];
+   }
+   
+   //position as a new XYZ, for callers that are not speed critical
+   public XYZ xyz(){
+      return new XYZ(x(), y(), z());
+   }
+   
+   //squared distance to another cell
+   public double dist2To(Cell c){
+      double dx = x() - c.x();
+      double dy = y() - c.y();
+      double dz = z() - c.z();
+      return dx*dx + dy*dy + dz*dz;
+   }
+   
+   //move to new position, keeping the form's spatial grid up to date
+   public void setXYZ(XYZ xyz){
+      setXYZ(xyz.x, xyz.y, xyz.z);
+   }
+   
+   //same as above, no XYZ needed
+   public void setXYZ(double x, double y, double z){
+      form.x[index] = x;
+      form.y[index] = y;
+      form.z[index] = z;
+      form.modCount++;
+      if (form.grid != null) form.grid.move(this);
    }
    
    public boolean isBud(){
@@ -285,21 +331,57 @@ public class Cell {
 
    //position determined by average with neighboring positions
    public XYZ avgNeighbors() {
-      XYZ sum = xyz;                   // new XYZ(0,0,0);
-      for (Cell v : adj) sum = XYZ.plus(sum, v.xyz);
-      return XYZ.scale(1.0/(adj.size()+1), sum);
+      double[] ans = new double[3];
+      avgNeighbors(ans);
+      return new XYZ(ans[0], ans[1], ans[2]);
+   }
+   
+   //same as above, put in ans[0..2] instead of allocating
+   public void avgNeighbors(double[] ans) {
+      double[] x = form.x, y = form.y, z = form.z;
+      double sx = x[index], sy = y[index], sz = z[index];
+      int n = adj.size();
+      for (int i=0; i<n; i++){
+         int j = adj.get(i).index;
+         sx += x[j];
+         sy += y[j];
+         sz += z[j];
+      }
+      double s = 1.0/(n+1);
+      ans[0] = s*sx;
+      ans[1] = s*sy;
+      ans[2] = s*sz;
    }
    
    //outward unit normal (avg n triangle normals)
    public XYZ normal(){
-      XYZ sum = new XYZ(0,0,0);
-      XYZ oldDiff = XYZ.minus(adj.get(adj.size()-1).xyz, xyz);
-      for (Cell v : adj) {
-         XYZ newDiff = XYZ.minus(v.xyz, xyz);
-         sum = XYZ.plus(sum, XYZ.cross(oldDiff, newDiff));
-         oldDiff = newDiff;
+      double[] ans = new double[3];
+      normal(ans);
+      return new XYZ(ans[0], ans[1], ans[2]);
+   }
+   
+   //same as above, put in ans[0..2] instead of allocating
+   public void normal(double[] ans){
+      double[] x = form.x, y = form.y, z = form.z;
+      double cx = x[index], cy = y[index], cz = z[index];
+      int n = adj.size();
+      int j = adj.get(n-1).index;
+      double ox = x[j] - cx, oy = y[j] - cy, oz = z[j] - cz;    //old diff
+      double sx = 0, sy = 0, sz = 0;
+      for (int i=0; i<n; i++) {
+         j = adj.get(i).index;
+         double nx = x[j] - cx, ny = y[j] - cy, nz = z[j] - cz;    //new diff
+         sx += oy*nz - oz*ny;               //plus old cross new
+         sy += oz*nx - ox*nz;
+         sz += ox*ny - oy*nx;
+         ox = nx;
+         oy = ny;
+         oz = nz;
       }
-      return XYZ.unit(sum);
+      double m = Math.sqrt(sx*sx + sy*sy + sz*sz);
+      ans[0] = sx/m;
+      ans[1] = sy/m;
+      ans[2] = sz/m;
    }
    
    public void printRegion(){
@@ -1,3 +1,5 @@
+import java.awt.Color;
+
 //import java.util.List;
 //
 ////Holds info for display and stl
@@ -9,12 +11,47 @@
 //   
 //}
 
+//mesh ready to draw or export, in flat arrays that can go to the GL as is.
+//Arrays may be longer than needed, so a DisplayInfo can be refilled for the
+//next frame without allocating; only the first nVert, nTri, nLine are used
 public class DisplayInfo {
    
-   float[][] vert;     //cell xyz coords
-   float[][] col; //3 rgb colors per cell
-   int[] tri;      //in groups of 3
-   int[] line;     //in pairs
+   float[] vert = new float[0];     //xyz of vertex i at 3i, 3i+1, 3i+2
+   float[] col = new float[0];      //rgb of vertex i, same layout
+   int[] tri = new int[0];          //vertex indices, in groups of 3
+   int[] line = new int[0];         //vertex indices, in pairs
+   int nVert, nTri, nLine;          //# vertices, triangles, lines used
+   int version;                     //changes each time we are refilled
+   
+   //make room for the given numbers of vertices, triangles and lines, and
+   //start a new version.  Old contents are not kept
+   public void setSize(int nVert, int nTri, int nLine){
+      if (vert.length < 3*nVert){
+         vert = new float[3*nVert];
+         col = new float[3*nVert];
+      }
+      if (tri.length < 3*nTri) tri = new int[3*nTri];
+      if (line.length < 2*nLine) line = new int[2*nLine];
+      this.nVert = nVert;
+      this.nTri = nTri;
+      this.nLine = nLine;
+      version++;
+   }
+   
+   //set position and color of vertex i
+   public void setVert(int i, double x, double y, double z, Color c){
+      setVert(i, x, y, z, c.getRGB());
+   }
+   
+   //same as above, color as packed rgb
+   public void setVert(int i, double x, double y, double z, int rgb){
+      vert[3*i] = (float) x;
+      vert[3*i+1] = (float) y;
+      vert[3*i+2] = (float) z;
+      col[3*i] = ((rgb >> 16) & 255) / 255f;
+      col[3*i+1] = ((rgb >> 8) & 255) / 255f;
+      col[3*i+2] = (rgb & 255) / 255f;
+   }
    
 }
 
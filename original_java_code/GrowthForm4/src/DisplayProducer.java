@@ -0,0 +1,72 @@
+//makes the DisplayInfo for the viewer on its own thread, so growth doesn't
+//wait on display prep after every step.  The viewer's timer asks once per
+//frame, and a new one is built only if the form or the display settings
+//changed since the last.  The form is locked only while it is copied to a
+//FormSnapshot; the mesh is built from that.  Buds too change only under the
+//form lock (see BudType), so coloring by them reads a settled form.  Two DisplayInfos are filled in
+//turn, so the one on show is never written; each is locked while being
+//drawn or filled.
+public class DisplayProducer implements Runnable {
+
+   private GrowthForm GF;
+   private DisplayInfo[] buffer = {new DisplayInfo(), new DisplayInfo()};
+   private FormSnapshot snapshot = new FormSnapshot();   //what the next is built from
+   private volatile DisplayInfo front;     //latest finished, for the viewer
+   private boolean requested;              //viewer wants a frame
+   private Object buildLock = new Object();   //one build at a time
+   private Form builtForm;                 //what front was made from...
+   private int builtModCount;              //...at which modification...
+   private String builtSettings;           //...with which display settings
+
+   public DisplayProducer(GrowthForm growthForm) {
+      this.GF = growthForm;          // remember our creator
+   }
+
+   //what the viewer should draw, or null if nothing is built yet
+   public DisplayInfo getDisplayInfo(){
+      return front;
+   }
+
+   //called once per frame by the viewer.  returns at once, work is done on our thread
+   public synchronized void requestFrame(){
+      requested = true;
+      notify();
+   }
+
+   public void run(){
+      while (true){
+         synchronized(this){
+            while (!requested){
+               try {wait();}
+               catch (InterruptedException e) {return;}
+            }
+            requested = false;
+         }
+         produce(false);
+      }
+   }
+
+   //build into the buffer not on show and publish it, unless nothing has
+   //changed.  force builds anyway, e.g., so a video frame is up to date.
+   //The form is read once, so a reset meanwhile can't mix two forms
+   public void produce(boolean force){
+      synchronized(buildLock){
+         Form form = GF.engine.form;
+         String settings = GF.displaySettings();
+         synchronized(form){
+            if (!force && form == builtForm && form.modCount == builtModCount
+                  && settings.equals(builtSettings)) return;
+            GF.takeSnapshot(form, snapshot);
+            builtForm = form;
+            builtModCount = form.modCount;
+            builtSettings = settings;
+         }
+         DisplayInfo back = (front == buffer[0]) ? buffer[1] : buffer[0];
+         synchronized(back){
+            GF.buildDisplayInfo(snapshot, back);
+         }
+         front = back;
+      }
+   }
+
+}
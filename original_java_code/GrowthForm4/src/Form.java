@@ -1,9 +1,10 @@
 import java.awt.Color;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 //Geometric form stored as a triangulated manifold
@@ -13,9 +14,28 @@ public class Form {
    List<Cell> cell;   //cells in the form
    private int regionR;   //region radius from center
    List<BudType> budTypes;    //the various bud types that exist
-   static Random rnd = new Random();
+   SplittableRandom rnd = new SplittableRandom();   //all growth choices, seed for a repeatable run
    static Color BLUE_FREEZE = Color.blue.brighter().brighter();
    int genus;          // number of holes 
+   SpatialGrid grid;   // cells by location, built on first collision check
+   int modCount;       // changes whenever cells move, appear, go or reconnect
+   int topoCount;      // changes whenever cells appear, go or reconnect
+   //cell positions, by cell index.  Flat arrays instead of an XYZ per cell,
+   //so relaxing and smoothing read memory in order and allocate nothing
+   double[] x = new double[0], y = new double[0], z = new double[0];
+   private double[] step = new double[3];    //scratch for springXYZ(Cell)
+   private RegionSearch search = new RegionSearch();   //scratch for our searches
+   private RegionSearch claimed = new RegionSearch();  //marks cells near claimed ones
+   private RegionSearch[] workers = new RegionSearch[0];   //scratch for divideAll
+   private double[][] smoothBuf = {new double[0], new double[0]};   //scratch for makeSmooth
+   //cells filed by # neighbors, so general growth finds a 4, 7 or 8 without
+   //a scan.  Bucket b has the cells with b+LOW_VALENCE neighbors, except the
+   //first has all with fewer and the last all with more.  In no order
+   final static int LOW_VALENCE = 4, HIGH_VALENCE = 8;
+   private List<List<Cell>> byValence = new ArrayList<List<Cell>>();
+   private Topology topology = new Topology();   //flat copy of the adj lists, see topology()
+   final static int PARALLEL_SMOOTH = 8192;   //smooth on the common pool from this many cells
+   final static int SPRING_LEAF = 64;   //fewest cells worth one task of a parallel relax sweep
    
    //constructor from cell coords and adj lists.  E.g., for square pyramid:
    //verts: {{0,0,1}, {1,0,0}, {0,1,0}, {-1,0,0}, {0,-1,0}}
@@ -28,47 +48,232 @@ public class Form {
       genus = 0;            // assume a simple object is given
       
       for (int i=0; i<verts.length; i++)
-         new Cell(this, new XYZ(verts[i][0], verts[i][1], verts[i][2]));
+         new Cell(this, verts[i][0], verts[i][1], verts[i][2]);
       for (int i=0; i<adj.length; i++)
          for (int j : adj[i]) 
             cell.get(i).adj.add(cell.get(j));
       
-      int[][] hops = countHops();      //all pairs distances
-      for (int i=0; i<verts.length; i++)
-         for (int j=0; j<verts.length; j++)
-            if (hops[i][j] <= regionR){
-               cell.get(i).region.put(cell.get(j), hops[i][j]);
-               cell.get(j).region.put(cell.get(i), hops[i][j]);
-            }
+      for (Cell c : cell)            //bounded BFS from each cell, O(n * region size)
+         calcRegion(c, regionR);
+      for (int i=LOW_VALENCE; i<=HIGH_VALENCE; i++)
+         byValence.add(new ArrayList<Cell>());
+      for (Cell c : cell) refile(c);
    }
    
    //remove cell from our list of cells.  
-   //assumes it is already eliminated from the topology
+   //assumes it is already eliminated from the topology:  no neighbors left
+   //(adj lists are symmetric, so no one has it as one) and no bud.
+   //The last cell moves into its slot, so no one else is renumbered and
+   //there is nothing to clean up.  Regions are exact, so symmetric:  the
+   //ones holding a cell's index are those of the cells in its own region
    public void removeCell(Cell c){
       synchronized(this){
          System.out.println("removing " + c.index);
-            for (Cell c1 : cell)
-            if (c1.adj.contains(c))
-               throw new IllegalArgumentException("Can't remove active cell");
-         for (Cell c1 : cell)
-            c1.region.remove(c);      //remove it from all distance maps
-         if (c.isBud()) c.bud.die();  //kill its bud, if any
+         if (!c.adj.isEmpty() || c.isBud())
+            throw new IllegalArgumentException("Can't remove active cell");
+         dropFromRegions(c);          //remove it from all distance maps, if not yet
+         topoCount++;
+         if (grid != null) grid.remove(c);
+         modCount++;
+         refile(c);                   //no longer in a valence bucket
+         int i = c.index;
+         int last = cell.size()-1;
+         if (i != last){              //last cell moves down to fill the gap
+            Cell m = cell.get(last);
+            Region mr = m.region;
+            for (int k=0; k<mr.size; k++){
+               Cell c1 = cell.get(mr.index[k]);
+               if (c1 != m) c1.region.rename(last, i);
+            }
+            mr.rename(last, i);       //its own, last, as we read it above
+            x[i] = x[last];
+            y[i] = y[last];
+            z[i] = z[last];
+            m.index = i;
+            cell.set(i, m);
+         }
+         cell.remove(last);
          c.index = -1;                //mark cell as no longer used
-         c.region.clear();
-         c.adj.clear();
-         //cleanup();
       }
    }
    
+   //put cell in the valence bucket for its # neighbors, after that changed.
+   //cells without neighbors, i.e., removed ones, are in no bucket
+   void refile(Cell c){
+      int b = -1;
+      if (!c.adj.isEmpty()) 
+         b = Math.max(LOW_VALENCE, Math.min(HIGH_VALENCE, c.n())) - LOW_VALENCE;
+      if (b == c.valenceBucket) return;
+      if (c.valenceBucket >= 0){            //out of the old one, last moves into our slot
+         List<Cell> old = byValence.get(c.valenceBucket);
+         Cell last = old.remove(old.size()-1);
+         if (last != c){
+            old.set(c.valenceSlot, last);
+            last.valenceSlot = c.valenceSlot;
+         }
+      }
+      if (b >= 0){
+         c.valenceSlot = byValence.get(b).size();
+         byValence.get(b).add(c);
+      }
+      c.valenceBucket = b;
+   }
+   
+   //cells with n neighbors, where LOW_VALENCE means that many or fewer and
+   //HIGH_VALENCE that many or more.  Only to be read, under the form lock
+   List<Cell> cellsWithValence(int n){
+      return byValence.get(n - LOW_VALENCE);
+   }
+   
+   //take cell c out of the regions of the cells in its own region, which are
+   //all that hold it while regions are exact, and empty its region.  A tube
+   //does this before it reconnects anything, while that still holds
+   void dropFromRegions(Cell c){
+      Region r = c.region;
+      for (int i=0; i<r.size; i++)
+         if (r.index[i] != c.index) cell.get(r.index[i]).region.remove(c.index);
+      r.clear();
+   }
+   
+   //store position of cell i, growing the coordinate arrays if needed
+   void addPosition(int i, double px, double py, double pz){
+      if (i >= x.length){
+         int cap = Math.max(64, 2*i);
+         x = Arrays.copyOf(x, cap);
+         y = Arrays.copyOf(y, cap);
+         z = Arrays.copyOf(z, cap);
+      }
+      x[i] = px;
+      y[i] = py;
+      z[i] = pz;
+   }
+   
+   //BFS to construct local region and hop distances based on topology
+   public synchronized void calcRegion(Cell v0, int maxDepth) {
+      search.calcRegion(this, v0, maxDepth);
+   }
+   
+   //cell v has just split off sib (see Cell.split):  fix the regions of
+   //the cells in v's region, then work out v's and sib's afresh
+   public synchronized void repairAfterSplit(Cell v, Cell sib) {
+      repairAfterSplit(v, sib, search);
+   }
+   
+   //same as above, on the given search scratch.  Reads only cells within
+   //2*regionR hops of v, and writes only regions of cells within regionR
+   private void repairAfterSplit(Cell v, Cell sib, RegionSearch s) {
+      Region r = v.region;
+      for (int i=0; i<r.size; i++){              //our own region last, as we read it
+         Cell u = cell.get(r.index[i]);
+         if (u != v) s.repairRegion(this, u, v, r.hops[i], regionR);
+      }
+      s.calcRegion(this, v, regionR);
+      s.calcRegion(this, sib, regionR);
+   }
+   
+   //begin claiming cells for divideAll
+   public synchronized void startClaims(){
+      claimed.start(cell.size());
+   }
+   
+   //claim cell c to be split by divideAll, unless it is too near one already
+   //claimed:  a cell's region and the ring of cells around it are marked, and
+   //c's region must not meet those.  So claimed cells are more than
+   //2*regionR+1 hops apart, and no split changes what another's region
+   //repair reads or writes.  true if claimed
+   public synchronized boolean claim(Cell c){
+      RegionSearch s = claimed;
+      Region r = c.region;
+      for (int j=0; j<r.size; j++)
+         if (s.visit[r.index[j]] == s.epoch) return false;
+      for (int j=0; j<r.size; j++){
+         Cell u = cell.get(r.index[j]);
+         s.visit[u.index] = s.epoch;
+         for (Cell w : u.adj) s.visit[w.index] = s.epoch;
+      }
+      return true;
+   }
+   
+   //split each of the given cells, which must have been claimed since the
+   //last startClaims, as divideTopology would.  The splits are made in the
+   //order given; then the regions near them, which don't overlap, are
+   //repaired in parallel on the pool, each worker on its own search scratch.
+   //The result is the same as one at a time.  Returns the new cells, in order
+   public synchronized List<Cell> divideAll(List<Cell> cells, ForkJoinPool pool){
+      List<Cell> sibs = new ArrayList<Cell>(cells.size());
+      for (Cell c : cells) sibs.add(c.split());
+      int p = Math.min(pool.getParallelism(), cells.size());
+      if (workers.length < p){
+         int k = workers.length;
+         workers = Arrays.copyOf(workers, p);
+         for (; k<p; k++) workers[k] = new RegionSearch();
+      }
+      if (p > 0) pool.invoke(new RepairTask(cells, sibs, 0, p, p));
+      return sibs;
+   }
+   
+   //repairs regions after the splits of divideAll.  Worker w takes
+   //splits w, w+p, w+2p, ... on scratch workers[w]; a task for a range of
+   //workers splits in two until it has one
+   private class RepairTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+      private List<Cell> cells, sibs;
+      private int lo, hi, p;
+      
+      RepairTask(List<Cell> cells, List<Cell> sibs, int lo, int hi, int p){
+         this.cells = cells;
+         this.sibs = sibs;
+         this.lo = lo;
+         this.hi = hi;
+         this.p = p;
+      }
+      
+      protected void compute(){
+         if (hi - lo == 1){
+            for (int i=lo; i<cells.size(); i+=p)
+               repairAfterSplit(cells.get(i), sibs.get(i), workers[lo]);
+            return;
+         }
+         int mid = (lo + hi) >>> 1;
+         invokeAll(new RepairTask(cells, sibs, lo, mid, p), new RepairTask(cells, sibs, mid, hi, p));
+      }
+   }
+   
+   //hops from v to the nearest bud of type bt, not counting v, nor passing
+   //through cell x (which may be null).  Looks no further than maxDepth hops,
+   //returning maxint if there is none that close.  BFS on the search scratch
+   public synchronized int nearestBud(Cell v, BudType bt, Cell x, int maxDepth){
+      RegionSearch s = search;
+      s.start(cell.size());
+      s.visit[v.index] = s.epoch;            //we are dist 0 from us
+      s.visitHops[v.index] = 0;
+      s.enqueue(v.index);
+      while (s.qHead < s.qTail){
+         Cell c = cell.get(s.queue[s.qHead++]);        //dequeue
+         int d = s.visitHops[c.index] + 1;           //neighbors are 1 hop further
+         for (Cell u : c.adj)
+            if (u != x){                           //don't count x
+               if (u.isBud() && u.bud.budType == bt) return d;
+               if (s.visit[u.index] != s.epoch && d < maxDepth){    //if new and not too far
+                  s.visit[u.index] = s.epoch;
+                  s.visitHops[u.index] = d;
+                  s.enqueue(u.index);                //more to do
+               }
+            }
+      }
+      return Integer.MAX_VALUE;          //none close enough
+   }
+   
    //distance as measured by region map
    public int dist(Cell v1, Cell v2){
-      Integer d = v1.region.get(v2);
-      if (d == null) return regionR+1;  
+      int d = v1.region.get(v2.index);
+      if (d < 0) return regionR+1;  
       return d;
    }
 
    //calc hop counts based on cell topology
-   //Floyd's all-pair dist alg.  Slow: O(n^3)
+   //Floyd's all-pair dist alg.  Slow: O(n^3) time and O(n^2) space
+   //Regions are built by BFS, so this is only a diagnostic, see checkRegions()
    public synchronized int[][] countHops(){
       int n=cell.size();
       int[][] hops = new int[n][n];   //all pairs distances
@@ -87,6 +292,22 @@ public class Form {
       return hops;
    }
    
+   //diagnostic: compare every region map against all pairs hop counts.
+   //prints the first disagreement and returns false if there is one
+   public synchronized boolean checkRegions(){
+      int[][] hops = countHops();
+      for (Cell v1 : cell)
+         for (Cell v2 : cell){
+            int d = hops[v1.index][v2.index];
+            int r = v1.region.get(v2.index);    //-1 if absent
+            if ((d <= regionR && r != d) || (d > regionR && r >= 0)){
+               System.out.println("Region bug: " + v1 + " " + v2 + " hops " + d + " region " + r);
+               return false;
+            }
+         }
+      return true;
+   }
+   
 //   public synchronized void printHops(){
 //      for (int i=0; i<hops.length; i++){
 //         System.out.print(i + ":");
@@ -96,33 +317,180 @@ public class Form {
 //      }
 //   }
    
-   //create list of cell XYZ's after k rounds of smoothing
-   public synchronized XYZ[] makeSmooth(int k) {
-      synchronized(this){
-         XYZ[] ans = new XYZ[cell.size()];
-         int i=0;
-         for (Cell c : cell) ans[i++] = c.xyz;
-         return makeSmooth(ans, k);
+   //cell xyz's after k rounds of smoothing, packed x,y,z for each cell index.
+   //The answer is in one of our buffers, reused by the next call, so the
+   //caller must only read it, and only while it holds the form lock
+   public synchronized double[] makeSmooth(int k) {
+      int n = cell.size();
+      if (smoothBuf[0].length < 3*n){
+         smoothBuf[0] = new double[3*n + 3*n/2];     //room to grow
+         smoothBuf[1] = new double[smoothBuf[0].length];
+      }
+      double[] ans = smoothBuf[0];
+      double[] next = smoothBuf[1];
+      for (int i=0; i<n; i++){
+         ans[3*i] = x[i];
+         ans[3*i+1] = y[i];
+         ans[3*i+2] = z[i];
       }
+      return smooth(topology(), ans, next, n, k);
    }
-   
-   //same as above, with array parameter to pass
-   private XYZ[] makeSmooth(XYZ[] input, int k) {
-      synchronized(this){
-         if (k<=0) return input;
-         XYZ[] ans = new XYZ[input.length];
-         for (int i=0; i<cell.size(); i++){
-            ans[i] = input[i];         //averalg neighbors and self
-            for (Cell c : cell.get(i).adj) ans[i] = XYZ.plus(ans[i], input[c.index]);
-            ans[i] = XYZ.scale(1.0/(cell.get(i).adj.size()+1), ans[i]);
+
+   //k rounds of smoothing of the packed positions in ans, for n cells
+   //connected as in top, with next as the other buffer.  Returns whichever
+   //of the two ends up with the answer
+   static double[] smooth(Topology top, double[] ans, double[] next, int n, int k){
+      for (int round=0; round<k; round++){
+         if (n >= PARALLEL_SMOOTH)
+            ForkJoinPool.commonPool().invoke(new SmoothTask(top, ans, next, 0, n));
+         else smoothRound(top, ans, next, 0, n);
+         double[] t = ans;            //swap buffers
+         ans = next;
+         next = t;
+      }
+      return ans;
+   }
+
+   //one round of smoothing for cells lo..hi-1:  each goes to the average of
+   //itself and its neighbors in from, put in to
+   private static void smoothRound(Topology t, double[] from, double[] to, int lo, int hi){
+      for (int i=lo; i<hi; i++){
+         double sx = from[3*i], sy = from[3*i+1], sz = from[3*i+2];
+         for (int h=t.start[i]; h<t.start[i+1]; h++){     //average neighbors and self
+            int a = 3*t.to[h];
+            sx += from[a];
+            sy += from[a+1];
+            sz += from[a+2];
          }
-         return makeSmooth(ans, k-1);
+         double s = 1.0/(t.degree(i)+1);
+         to[3*i] = s*sx;
+         to[3*i+1] = s*sy;
+         to[3*i+2] = s*sz;
       }
    }
-   
+
+   //a smoothing round for a slice of the cells, splitting if it is big.
+   //the caller holds the form lock, or t is a copy, so nothing changes underneath
+   private static class SmoothTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+      private static final int LEAF = 1024;   //cells worth doing in one task
+      private Topology t;
+      private double[] from, to;
+      private int lo, hi;
+
+      SmoothTask(Topology t, double[] from, double[] to, int lo, int hi){
+         this.t = t;
+         this.from = from;
+         this.to = to;
+         this.lo = lo;
+         this.hi = hi;
+      }
+
+      protected void compute(){
+         if (hi - lo <= LEAF){
+            smoothRound(t, from, to, lo, hi);
+            return;
+         }
+         int mid = (lo + hi) >>> 1;
+         invokeAll(new SmoothTask(t, from, to, lo, mid), new SmoothTask(t, from, to, mid, hi));
+      }
+   }
+
    //use spring model to nudge xyz location of given cell
    //only points in our region affect us
    public synchronized void springXYZ(Cell v){
+      springDelta(v, step, 0);
+      int i = v.index;
+      v.setXYZ(x[i] + step[0], y[i] + step[1], z[i] + step[2]);
+   }
+   
+   //relax the neighbors of the given cells, each once per round however many
+   //of the cells it is next to.  For a batch of divisions, which would
+   //otherwise each relax their own, mostly shared, neighborhood
+   public synchronized void springAround(List<Cell> cells, int rounds){
+      RegionSearch s = search;
+      s.start(cell.size());              //visit marks the neighbors found
+      for (Cell c : cells)
+         if (c.index >= 0)
+            for (Cell u : c.adj)
+               if (s.visit[u.index] != s.epoch){
+                  s.visit[u.index] = s.epoch;
+                  s.enqueue(u.index);
+               }
+      int n = s.qTail;
+      for (int repeat=0; repeat<rounds; repeat++)
+         for (int i=0; i<n; i++) springXYZ(cell.get(s.queue[i]));
+   }
+   
+   //Jacobi style relaxation of up to n distinct cells, given by index:  all
+   //the spring deltas are computed from the current positions, in parallel
+   //on the pool (in this thread if they make only one task), and only then applied.  A cell is skipped if it is in the
+   //region of one already taken, so no cell reads a position that moves in
+   //the same sweep, and the result is just as if they were done one by one.
+   //Positions are not changed by anyone else meanwhile, since only the
+   //growing thread moves cells.  Returns # of cells moved.
+   public int springXYZ(int[] which, int n, ForkJoinPool pool){
+      int[] chosen = new int[n];
+      int m = 0;
+      synchronized(this){
+         RegionSearch s = search;
+         s.start(cell.size());              //visit marks the chosen cells
+         for (int i=0; i<n; i++){
+            Region r = cell.get(which[i]).region;
+            boolean free = true;
+            for (int j=0; j<r.size && free; j++)
+               if (s.visit[r.index[j]] == s.epoch) free = false;
+            if (free){
+               s.visit[which[i]] = s.epoch;
+               chosen[m++] = which[i];
+            }
+         }
+      }
+      double[] delta = new double[3*m];
+      int p = pool.getParallelism();
+      int leaf = Math.max(SPRING_LEAF, (m + 4*p - 1) / (4*p));   //a few tasks per worker
+      if (m <= leaf)
+         for (int i=0; i<m; i++) springDelta(cell.get(chosen[i]), delta, 3*i);
+      else pool.invoke(new SpringTask(chosen, delta, 0, m, leaf));
+      synchronized(this){
+         for (int i=0; i<m; i++){
+            int j = chosen[i];
+            cell.get(j).setXYZ(x[j] + delta[3*i], y[j] + delta[3*i+1], z[j] + delta[3*i+2]);
+         }
+      }
+      return m;
+   }
+   
+   //computes spring deltas for a slice of the cells, splitting if it is big
+   private class SpringTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+      private int[] which;
+      private double[] delta;
+      private int lo, hi;
+      private int leaf;     //cells worth doing in one task
+      
+      SpringTask(int[] which, double[] delta, int lo, int hi, int leaf){
+         this.which = which;
+         this.delta = delta;
+         this.lo = lo;
+         this.hi = hi;
+         this.leaf = leaf;
+      }
+      
+      protected void compute(){
+         if (hi - lo <= leaf){
+            for (int i=lo; i<hi; i++)
+               springDelta(cell.get(which[i]), delta, 3*i);
+            return;
+         }
+         int mid = (lo + hi) >>> 1;
+         invokeAll(new SpringTask(which, delta, lo, mid, leaf), new SpringTask(which, delta, mid, hi, leaf));
+      }
+   }
+   
+   //Newton-Raphson step that would bring given cell closer to its spring
+   //equilibrium with its region, put in ans[off..off+2].  Reads positions only.
+   void springDelta(Cell v, double[] ans, int off){
       double dEdx = 0;     //coefficients for energy minimization eqs.
       double dEdy = 0;     //want 3 partial derivs to be zero simultaneously
       double dEdz = 0;     //Newton-Raphson iteration using Jacobian
@@ -132,17 +500,21 @@ public class Form {
       double d2Edxdy = 0;
       double d2Edxdz = 0;
       double d2Edydz = 0;
-      for (Cell u : v.region.keySet())
-         if (v != u){
-            double dx = v.xyz.x - u.xyz.x;
-            double dy = v.xyz.y - u.xyz.y;
-            double dz = v.xyz.z - u.xyz.z;
+      Region r = v.region;
+      double vx = x[v.index], vy = y[v.index], vz = z[v.index];
+      double vRadius = v.getRadius();
+      for (int i=0; i<r.size; i++){
+         int j = r.index[i];
+         if (j != v.index){
+            double dx = vx - x[j];
+            double dy = vy - y[j];
+            double dz = vz - z[j];
             double dx2 = dx*dx;
             double dy2 = dy*dy;
             double dz2 = dz*dz;
             double d2 = dx2 + dy2 + dz2;
             double d = Math.sqrt(d2);
-            double L = dist(v, u) * (v.getRadius() + u.getRadius()); 
+            double L = r.hops[i] * (vRadius + cell.get(j).getRadius()); 
             double K = 1.0/L;                 //spring constant
             double coeff = K*(1.0 - L/d);
             dEdx += coeff * dx;
@@ -157,13 +529,12 @@ public class Form {
             d2Edxdz += coeffK * dx * dz;
             d2Edydz += coeffK * dy * dz;
            }
-      XYZ delta = solve3(d2Edx2, d2Edxdy, d2Edxdz, d2Edy2, d2Edydz, d2Edz2, -dEdx, -dEdy, -dEdz);
+      }
+      solve3(d2Edx2, d2Edxdy, d2Edxdz, d2Edy2, d2Edydz, d2Edz2, -dEdx, -dEdy, -dEdz, ans, off);
       double max = 0.5;                      //don't move too far, for stability
-      delta.x = Math.max(-max, Math.min(delta.x, max));
-      delta.y = Math.max(-max, Math.min(delta.y, max));
-      delta.z = Math.max(-max, Math.min(delta.z, max));
-      v.xyz = XYZ.plus(v.xyz, delta);   
-}
+      for (int k=off; k<off+3; k++)
+         ans[k] = Math.max(-max, Math.min(ans[k], max));
+   }
    
 //   //bisect edges, make 4 small triangles for each orig. triangle
 //   public synchronized Form subdivide(){
@@ -199,17 +570,28 @@ public class Form {
    
    //translates so mean of vertices is at origin
    public synchronized void center(){
-      XYZ sum = new XYZ(0,0,0);
-      for (Cell v : cell) sum = XYZ.plus(sum, v.xyz);
-      XYZ avg = XYZ.scale(-1.0/cell.size(), sum);
-      for (Cell v : cell) v.xyz = XYZ.plus(v.xyz, avg);      
+      int n = cell.size();
+      double sx = 0, sy = 0, sz = 0;
+      for (int i=0; i<n; i++){
+         sx += x[i];
+         sy += y[i];
+         sz += z[i];
+      }
+      double dx = -sx/n, dy = -sy/n, dz = -sz/n;
+      for (int i=0; i<n; i++){
+         x[i] += dx;
+         y[i] += dy;
+         z[i] += dz;
+      }
+      if (grid != null) grid.translate(dx, dy, dz);      //grid just shifts with us
+      modCount++;
    }
    
    //project points to sphere so edges approx unit length avg
    public synchronized void sphericalize(){
       double R = Math.sqrt(cell.size()/12.);
       center();
-      for (Cell v : cell) v.xyz = XYZ.scale(R, XYZ.unit(v.xyz));
+      for (Cell v : cell) v.setXYZ(XYZ.scale(R, XYZ.unit(v.xyz())));
    }
 
    //solve symmetric 3x3 system of simultaneous equations:
@@ -217,6 +599,14 @@ public class Form {
    // [B D E] [y] = H
    // [C E F] [z] = I
    public static XYZ solve3(double A, double B, double C, double D, double E, double F, double G, double H, double I){
+      double[] ans = new double[3];
+      solve3(A, B, C, D, E, F, G, H, I, ans, 0);
+      return new XYZ(ans[0], ans[1], ans[2]);
+   }
+   
+   //same as above, solution put in ans[off..off+2]
+   public static void solve3(double A, double B, double C, double D, double E, double F, double G, double H, double I,
+                             double[] ans, int off){
       double BBmAD = B*B - A*D;  
       double BCmAE = B*C - A*E;
       double BGmAH = B*G - A*H;
@@ -226,7 +616,9 @@ public class Form {
       double z = (BGmAH * CBmAE - BBmAD * CGmAI) / (CBmAE * BCmAE - BBmAD * CCmAF);
       double y = (BGmAH - BCmAE*z) / BBmAD;
       double x = (G - B*y - C*z) / A;
-      return new XYZ(x, y, z);
+      ans[off] = x;
+      ans[off+1] = y;
+      ans[off+2] = z;
    }
    
    //solid color for all vertices
@@ -240,18 +632,18 @@ public class Form {
    public synchronized Color[] colorAllByGrowers(Color color, Color backgroundColor) {
       Color[] ans = colorAll(backgroundColor);
       for (BudType bt : budTypes){
-         for (Bud b : bt.getBuds())
-            for (Cell c : b.cell.region.keySet()) {
-               int dist = b.cell.region.get(c);
-               if (dist > b.fatness) ans[c.index] = color;     //first the regions
-            } 
+         for (Bud b : bt.getBuds()) {
+            Region r = b.cell.region;
+            for (int i=0; i<r.size; i++)
+               if (r.hops[i] > b.fatness) ans[r.index[i]] = color;     //first the regions
+         }
       }
       for (BudType bt : budTypes){
-         for (Bud b : bt.getBuds())
-            for (Cell c : b.cell.region.keySet()) {
-               int dist = b.cell.region.get(c);
-               if (dist<=b.fatness) ans[c.index] = color.darker();  //then growing neighborhood
-            } 
+         for (Bud b : bt.getBuds()) {
+            Region r = b.cell.region;
+            for (int i=0; i<r.size; i++)
+               if (r.hops[i]<=b.fatness) ans[r.index[i]] = color.darker();  //then growing neighborhood
+         }
       }
       for (BudType bt : budTypes){
          for (Bud b : bt.getBuds()) ans[b.cell.index] = Color.BLACK;  //then the buds
@@ -283,7 +675,7 @@ public class Form {
       Color[] ans = new Color[cell.size()];
       for (Cell v : cell){
          double avg = 0.0;
-         for (Cell u : v.adj) avg += XYZ.mag(XYZ.minus(v.xyz, u.xyz));
+         for (Cell u : v.adj) avg += Math.sqrt(v.dist2To(u));
          avg = avg / v.adj.size();
          double alpha = (avg-0.3) / 1.4;         //usually 0.2<avg<1.8
          ans[v.index] = Cell.colorBlend(alpha, Color.ORANGE, Color.MAGENTA);
@@ -292,7 +684,7 @@ public class Form {
    }
 
    //color to indicate if still growing or sterile
-   public Color[] colorAllBySterile() {
+   public synchronized Color[] colorAllBySterile() {
       Color[] ans = colorAll(BLUE_FREEZE);
       for (Cell v : cell)
          if (v.isBud() && v.bud.frozen) ans[v.index] = Color.WHITE; 
@@ -312,12 +704,36 @@ public class Form {
       return sum/2;
    }
    
+   //flat read-only copy of the cells' adj lists, rebuilt first if cells have
+   //appeared, gone or reconnected since.  To be read under the form lock, or
+   //by the growing thread, which is the only one that changes the topology
+   public synchronized Topology topology(){
+      if (topology.topoCount != topoCount) topology.build(this);
+      return topology;
+   }
+   
    //total # of triangle faces
    public int countFaces(){
      return countEdges() + 2 - countVertices() - 2*genus;        //V+F=E+2-2g  
   }
 
    
+   //spatial index of the cells, created the first time it is needed.
+   //voxels are the size of a collision check so a query looks at 27 of them
+   public synchronized SpatialGrid getGrid(){
+      if (grid == null){
+         grid = new SpatialGrid(Bud.COLLISION_DISTANCE);
+         for (Cell c : cell)
+            if (c.index >= 0) grid.add(c);        //skip cells removed by tubes
+      }
+      return grid;
+   }
+
+   //restart our random source, so the same script grows the same form
+   public void setSeed(long seed){
+      rnd = new SplittableRandom(seed);
+   }
+
    //size of region never changes
    public int getRegionR() {
       return regionR;
@@ -327,18 +743,31 @@ public class Form {
       budTypes.add(newType);       
    } 
    
+   //how many buds of all types are not frozen
+   public int countLiveBuds(){
+      int ans = 0;
+      for (BudType bt : budTypes) ans += bt.countLiveBuds();
+      return ans;
+   }
+   
+   //a random live bud, each equally likely whatever its type
    public Bud chooseNextToDivide(){
-      int nBuds = 0;
-      for (BudType bt : budTypes) nBuds += bt.countLiveBuds();
+      return chooseNextToDivide(null);
+   }
+   
+   //same as above, but null if the bud drawn is in seen, which it is added
+   //to otherwise, so its cell is chosen only once.  seen may be null
+   public Bud chooseNextToDivide(List<Bud> seen){
+      int nBuds = countLiveBuds();
       if (nBuds == 0) return null;
       int k = rnd.nextInt(nBuds);   //will choose kth one of all
       int m = 0;
       for (BudType bt : budTypes){
-         m += bt.getBuds().size();
-         if (m > k) return bt.chooseNextBudToDivide();
+         m += bt.countLiveBuds();
+         if (m > k) return bt.chooseNextBudToDivide(rnd, seen);
       }
       System.out.println("Choosing Bud program error");
-      return budTypes.get(0).chooseNextBudToDivide();  
+      return budTypes.get(0).chooseNextBudToDivide(rnd, seen);  
    }
 
    //informative text
@@ -396,16 +825,6 @@ public class Form {
       }
       return ans;
    }
-
-   //remove any unused cells, due to tubes
-   public synchronized void cleanup() {
-      Iterator<Cell> it = cell.iterator();
-      while (it.hasNext()){
-         Cell c = it.next();
-         if (c.adj.isEmpty()) it.remove();
-      } 
-      for (Cell c : cell) c.index = cell.indexOf(c);
-   }
    
 
    
@@ -0,0 +1,77 @@
+import java.awt.Color;
+
+//copy of what a display build needs from a form:  cell positions, the
+//connectivity, and each cell's color and texture.  Taken under the form
+//lock, which is then let go, so growth carries on while the mesh is
+//smoothed and built from the copy.  Arrays are reused from one to the next
+public class FormSnapshot {
+
+   int n;                              //# cells
+   double[] x = new double[0], y = new double[0], z = new double[0];   //unsmoothed
+   Topology top = new Topology();      //connectivity, as the form's
+   int[] rgb = new int[0];             //display color of each cell
+   Texture[] texture;                  //texture of each cell, or null for plain triangles
+   int nEdges, nFaces;
+   private double[][] smoothBuf = {new double[0], new double[0]};
+
+   //copy form f, which the caller must have locked, with the given colors
+   //and textures (null for plain triangles), both by cell index
+   void take(Form f, Color[] dispColor, Texture[] dispTexture){
+      n = f.cell.size();
+      if (x.length < n){
+         int cap = Math.max(64, n + n/2);            //room to grow
+         x = new double[cap];
+         y = new double[cap];
+         z = new double[cap];
+         rgb = new int[cap];
+      }
+      System.arraycopy(f.x, 0, x, 0, n);
+      System.arraycopy(f.y, 0, y, 0, n);
+      System.arraycopy(f.z, 0, z, 0, n);
+      for (int i=0; i<n; i++) rgb[i] = dispColor[i].getRGB();
+      texture = dispTexture;
+      top.copy(f.topology());
+      nEdges = top.start[n]/2;
+      nFaces = f.countFaces();
+   }
+
+   //positions after k rounds of smoothing, packed x,y,z for each cell, as
+   //Form.makeSmooth gives.  Valid until the next call
+   double[] smooth(int k){
+      if (smoothBuf[0].length < 3*n){
+         smoothBuf[0] = new double[3*n + 3*n/2];
+         smoothBuf[1] = new double[smoothBuf[0].length];
+      }
+      double[] ans = smoothBuf[0];
+      for (int i=0; i<n; i++){
+         ans[3*i] = x[i];
+         ans[3*i+1] = y[i];
+         ans[3*i+2] = z[i];
+      }
+      return Form.smooth(top, ans, smoothBuf[1], n, k);
+   }
+
+   //unit normal of cell i from the unsmoothed positions, as Cell.normal
+   void normal(int i, double[] ans){
+      double cx = x[i], cy = y[i], cz = z[i];
+      int h0 = top.start[i], h1 = top.start[i+1];
+      int j = top.to[h1-1];
+      double ox = x[j] - cx, oy = y[j] - cy, oz = z[j] - cz;    //old diff
+      double sx = 0, sy = 0, sz = 0;
+      for (int h=h0; h<h1; h++) {
+         j = top.to[h];
+         double nx = x[j] - cx, ny = y[j] - cy, nz = z[j] - cz;    //new diff
+         sx += oy*nz - oz*ny;               //plus old cross new
+         sy += oz*nx - ox*nz;
+         sz += ox*ny - oy*nx;
+         ox = nx;
+         oy = ny;
+         oz = nz;
+      }
+      double m = Math.sqrt(sx*sx + sy*sy + sz*sz);
+      ans[0] = sx/m;
+      ans[1] = sy/m;
+      ans[2] = sz/m;
+   }
+
+}
@@ -8,6 +8,9 @@ import java.awt.Color;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.Iterator;
 import java.util.List;
 
@@ -19,6 +22,13 @@ public class GLrenderer implements GLEventListener, KeyListener, MouseInputListe
    private double rotationAngle = 0;   
    private double cameraDist = 20.;
    private static final GLU glu = new GLU();
+   //buffer objects holding the mesh in the GL, if it has them, so a frame
+   //is a few draw calls instead of sending every vertex again
+   private boolean useVBO;
+   private int[] vbo = new int[4];         //ids of buffers:
+   private static final int VERT=0, COL=1, TRI=2, LINE=3;
+   private DisplayInfo uploaded;           //what the buffers hold now...
+   private int uploadedVersion;            //...and which filling of it
 
    public GLrenderer(GrowthForm growthForm) {
       this.GF = growthForm;          // remember our creator
@@ -66,7 +76,57 @@ public class GLrenderer implements GLEventListener, KeyListener, MouseInputListe
  //     synchronized(GF.form){
         DisplayInfo d = GF.getDisplayInfo();         // d has display data: vert, col, tri, line
         if (d==null) return;
-        
+        synchronized(d){                             // not refilled while we draw it
+           if (useVBO) drawVBO(gl, d);
+           else drawImmediate(gl, d);
+        }
+    //  }
+
+      //spinAngle += 0.5f;  //moved upstairs for uniform spin with growth
+   }
+
+   //draw from the buffer objects, first uploading d if it has changed
+   private void drawVBO(GL gl, DisplayInfo d){
+      if (d != uploaded || d.version != uploadedVersion) upload(gl, d);
+      gl.glEnableClientState(GL.GL_VERTEX_ARRAY);
+      gl.glEnableClientState(GL.GL_COLOR_ARRAY);
+      gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vbo[VERT]);
+      gl.glVertexPointer(3, GL.GL_FLOAT, 0, 0);
+      gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vbo[COL]);
+      gl.glColorPointer(3, GL.GL_FLOAT, 0, 0);
+      gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, vbo[TRI]);
+      gl.glDrawElements(GL.GL_TRIANGLES, 3*d.nTri, GL.GL_UNSIGNED_INT, 0);
+      gl.glDisableClientState(GL.GL_COLOR_ARRAY);
+
+      gl.glDisable(GL.GL_LIGHTING);            // Disable lights for edges and points
+      gl.glColor3f(0.0f, 0.0f, 0.0f);          //black edges
+      if (d.nLine > 0){
+         gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, vbo[LINE]);
+         gl.glDrawElements(GL.GL_LINES, 2*d.nLine, GL.GL_UNSIGNED_INT, 0);
+      }
+      gl.glDisableClientState(GL.GL_VERTEX_ARRAY);
+      gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+      gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, 0);
+   }
+
+   //send d's arrays to the GL as they are, no packing needed
+   private void upload(GL gl, DisplayInfo d){
+      send(gl, GL.GL_ARRAY_BUFFER, vbo[VERT], FloatBuffer.wrap(d.vert, 0, 3*d.nVert));
+      send(gl, GL.GL_ARRAY_BUFFER, vbo[COL], FloatBuffer.wrap(d.col, 0, 3*d.nVert));
+      send(gl, GL.GL_ELEMENT_ARRAY_BUFFER, vbo[TRI], IntBuffer.wrap(d.tri, 0, 3*d.nTri));
+      send(gl, GL.GL_ELEMENT_ARRAY_BUFFER, vbo[LINE], IntBuffer.wrap(d.line, 0, 2*d.nLine));
+      uploaded = d;
+      uploadedVersion = d.version;
+   }
+
+   //4 byte elements, from the buffer's position to its limit
+   private void send(GL gl, int target, int id, Buffer data){
+      gl.glBindBuffer(target, id);
+      gl.glBufferData(target, 4*data.remaining(), data, GL.GL_DYNAMIC_DRAW);
+   }
+
+   //old way, every vertex sent each frame.  for GLs without buffer objects
+   private void drawImmediate(GL gl, DisplayInfo d){
          gl.glBegin(GL.GL_TRIANGLES);
 //         for (Triangle t : displayInfo.tris){
 //            gl.glColor3f(t.v1.colorRed, t.v1.colorGreen, t.v1.colorBlue); 
@@ -77,17 +137,19 @@ public class GLrenderer implements GLEventListener, KeyListener, MouseInputListe
 //            gl.glVertex3f((float)t.v3.xyz.x, (float)t.v3.xyz.y, (float)t.v3.xyz.z);
 //         }
 
-         for (int i = 0; i<d.tri.length; i++){
-          gl.glColor3f(d.col[d.tri[i]][0], d.col[d.tri[i]][1], d.col[d.tri[i]][2]); 
-          gl.glVertex3f(d.vert[d.tri[i]][0], d.vert[d.tri[i]][1], d.vert[d.tri[i]][2]);
+         for (int i = 0; i<3*d.nTri; i++){
+          int v = 3*d.tri[i];
+          gl.glColor3f(d.col[v], d.col[v+1], d.col[v+2]); 
+          gl.glVertex3f(d.vert[v], d.vert[v+1], d.vert[v+2]);
          }
          gl.glEnd();
 
          gl.glDisable(GL.GL_LIGHTING);            // Disable lights for edges and points
          gl.glColor3f(0.0f, 0.0f, 0.0f);                     //black edges
          gl.glBegin(GL.GL_LINES);                            //Start drawing edges (each twice if in 2 tris)
-         for (int i = 0; i<d.line.length; i++){
-            gl.glVertex3f(d.vert[d.line[i]][0], d.vert[d.line[i]][1], d.vert[d.line[i]][2]);
+         for (int i = 0; i<2*d.nLine; i++){
+            int v = 3*d.line[i];
+            gl.glVertex3f(d.vert[v], d.vert[v+1], d.vert[v+2]);
            }
 //         Iterator<Cell> it = displayInfo.lines.iterator();
 //         while (it.hasNext()){
@@ -101,9 +163,6 @@ public class GLrenderer implements GLEventListener, KeyListener, MouseInputListe
 //                  gl.glVertex3f((float)v2.xyz.x, (float)v2.xyz.y, (float)v2.xyz.z);
 //               }
          gl.glEnd();                                        // Done drawing edges
-    //  }
-
-      //spinAngle += 0.5f;  //moved upstairs for uniform spin with growth
    }
 
    public void displayChanged(GLAutoDrawable gL, boolean mode, boolean dev) {}
@@ -116,6 +175,10 @@ public class GLrenderer implements GLEventListener, KeyListener, MouseInputListe
       gl.glEnable(GL.GL_DEPTH_TEST);
       gl.glDepthFunc(GL.GL_LEQUAL);
       gl.glHint(GL.GL_PERSPECTIVE_CORRECTION_HINT, GL.GL_NICEST);
+      useVBO = gl.isFunctionAvailable("glGenBuffers") && gl.isFunctionAvailable("glBindBuffer")
+            && gl.isFunctionAvailable("glBufferData");
+      if (useVBO) gl.glGenBuffers(vbo.length, vbo, 0);
+      uploaded = null;                         //new context, nothing in it yet
       gLDrawable.addKeyListener(this);
       gLDrawable.addMouseMotionListener(this);
       gLDrawable.addMouseListener(this);
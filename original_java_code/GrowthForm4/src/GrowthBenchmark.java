@@ -0,0 +1,120 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+
+//times the growth kernel on the shipped scripts, headless and seeded, so a
+//change to division, regions or relaxation can be judged by numbers:
+//   java GrowthBenchmark scriptDir nCells [iterations [script ...]]
+//Each script is grown from its start line to nCells cells, a few times
+//to warm up and then the given # of times, and its relaxation is timed
+//on the grown form.  Reports divisions/sec, relax moves/sec, bytes
+//allocated per division and peak heap.
+public class GrowthBenchmark {
+
+   final static String[] SCRIPTS = {"coral", "branch", "fungus", "octopus", "blobs1"};
+   final static int WARMUP = 3;          //untimed runs of each script first
+   final static int RELAX_ROUNDS = 200;  //relax() calls timed on the grown form
+   final static long SEED = 1;           //same workload every run
+
+   private ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+   public static void main(String[] args) throws IOException {
+      if (args.length < 2) {
+         System.out.println("usage: java GrowthBenchmark scriptDir nCells [iterations [script ...]]");
+         return;
+      }
+      File dir = new File(args[0]);
+      int nCells = Integer.parseInt(args[1]);
+      int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+      String[] scripts = SCRIPTS;
+      if (args.length > 3) {
+         scripts = new String[args.length-3];
+         System.arraycopy(args, 3, scripts, 0, scripts.length);
+      }
+      GrowthBenchmark bench = new GrowthBenchmark();
+      System.out.println("script       cells  divisions/s  relax moves/s  KB/division  peak heap MB");
+      for (String name : scripts) {
+         String script = GrowthEngine.readScript(new File(dir, name + ".gfs"));
+         bench.run(name, script, nCells, iterations);
+      }
+   }
+
+   //warm up, then time the given # of iterations of one script and print a line
+   public void run(String name, String script, int nCells, int iterations){
+      for (int i=0; i<WARMUP; i++) grow(script, nCells, null);
+      double divisionRate = 0, relaxRate = 0, bytesPerDivision = 0;
+      long peak = 0;
+      int cells = 0;
+      for (int i=0; i<iterations; i++){
+         System.gc();
+         resetPeakHeap();
+         double[] result = new double[3];
+         GrowthEngine engine = grow(script, nCells, result);
+         if (engine == null) return;
+         cells = engine.form.cell.size();
+         divisionRate += result[0] / result[1];
+         bytesPerDivision += result[2] / result[0];
+         relaxRate += relaxMoves(engine);
+         peak = Math.max(peak, peakHeap());
+      }
+      System.out.println(String.format("%-12s %5d %12.0f %14.0f %12.1f %13.1f", name, cells,
+            divisionRate/iterations, relaxRate/iterations,
+            bytesPerDivision/iterations/1024, peak/(1024.0*1024)));
+   }
+
+   //seed and grow a script until it has nCells cells, or can't grow any more.
+   //if result isn't null it gets {# divisions, seconds, bytes allocated}.
+   //returns null if the script has an error
+   GrowthEngine grow(String script, int nCells, double[] result){
+      GrowthEngine engine = new GrowthEngine();
+      engine.setSeed(SEED);
+      if (!engine.initScript(script)) return null;
+      int startCells = engine.form.cell.size();
+      long bytes = allocatedBytes();
+      long start = System.nanoTime();
+      while (engine.form.cell.size() < nCells)
+         if (engine.grow(1) == 0) break;        //all buds frozen or stuck
+      long elapsed = System.nanoTime() - start;
+      if (result != null){
+         result[0] = Math.max(1, engine.form.cell.size() - startCells);
+         result[1] = elapsed / 1e9;
+         result[2] = allocatedBytes() - bytes;
+      }
+      return engine;
+   }
+
+   //spring moves per second when relaxing the grown form, counting the
+   //cells relax() says it moved
+   double relaxMoves(GrowthEngine engine){
+      long moves = 0;
+      long start = System.nanoTime();
+      for (int i=0; i<RELAX_ROUNDS; i++) moves += engine.relax();
+      double seconds = (System.nanoTime() - start) / 1e9;
+      return moves / seconds;
+   }
+
+   //bytes allocated so far by this thread, or 0 if the JVM can't say.
+   //(parallel relaxation allocates on pool threads, which aren't counted)
+   private long allocatedBytes(){
+      if (threads instanceof com.sun.management.ThreadMXBean)
+         return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+      return 0;
+   }
+
+   private void resetPeakHeap(){
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+         if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+   }
+
+   //sum of the heap pools' peaks since the last reset
+   private long peakHeap(){
+      long ans = 0;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+         if (pool.getType() == MemoryType.HEAP) ans += pool.getPeakUsage().getUsed();
+      return ans;
+   }
+
+}
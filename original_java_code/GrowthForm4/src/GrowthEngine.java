@@ -0,0 +1,626 @@
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+//Grows a form from a script with no GUI or GL attached.
+//GrowthForm drives one of these for interactive display, but batch runs
+//can use it directly:  load a script, seed, grow n steps, take the form.
+//Display data (DisplayInfo) is only built when someone asks for it.
+public class GrowthEngine {
+
+   volatile Form form;          //the form being grown
+   Instruction[] code;          //compiled script lines
+   GrowthListener listener;     //who is watching, or null if headless
+   Long seed;                   //seed for each new form, or null for the script's own or none
+   int relaxCount = RELAX_COUNT;  //# cells relaxed after each step
+   ForkJoinPool relaxPool;      //relax in parallel on this pool, or sequentially if null
+   boolean batchGrow;           //a bud runs a whole grow line per step (see stepBatch)
+   ForkJoinPool growPool;       //divide several buds at once on this pool (see stepParallel), or null
+   int growBatch;               //# buds chosen per parallel step
+   private List<Cell> touched = new ArrayList<Cell>();   //cells divided in a batch
+   private List<Bud> batch = new ArrayList<Bud>();       //buds dividing in a parallel step
+   private List<Cell> chosen = new ArrayList<Cell>();    //...and their cells
+   private List<Bud> seen = new ArrayList<Bud>();        //buds drawn in a parallel step
+   private int[] relaxOrder = new int[0];  //permutation of cell indices, for sampling
+   private int relaxN = 0;                 //# cells in relaxOrder
+   final static int REGION_HOPS = 4;  //how big is the local region?
+   final static int RELAX_COUNT = 50; //# random cells to relax after each step
+   final static int MAX_IDLE_STEPS = 10000;  //give up if no bud can act this many times in a row
+
+   //word is flagged with T if followed by BudType or n if followed by n integers
+   //or U if followed by one budtype then 1 integer
+   final static String[] COMMANDS = {"1grow", "1sleep", "1fatness", "1size", "1line",
+        "Tring", "Tfill", "Tspawn", "Ttrail", "Tbecome", "Trepel",
+        "0noop", "0freeze", "0larger", "0smaller", "0inwards", "0outwards", "0die",
+        "0upwards", "0downwards", "0radial", "0nocollisioncheck", "1general",
+        "0flat", "0spike", "0bump", "0web", "0hairy", "3texture", "3color",
+        "3mustface", "3headtowards", "1blob", "Udisperse", "0tube"};
+
+   //headless engine
+   public GrowthEngine() {
+      this(null);
+   }
+
+   //engine reporting to the given listener (may be null)
+   public GrowthEngine(GrowthListener listener) {
+      this.listener = listener;
+   }
+
+   //batch growth from the command line:  GrowthEngine script.gfs nSteps [seed [batch]]
+   public static void main(String[] args) throws IOException {
+      if (args.length < 2 || args.length > 4 || (args.length == 4 && !args[3].equals("batch"))) {
+         System.out.println("usage: java GrowthEngine script.gfs nSteps [seed [batch]]");
+         return;
+      }
+      GrowthEngine engine = new GrowthEngine();
+      if (args.length >= 3) engine.setSeed(Long.parseLong(args[2]));
+      if (args.length == 4) engine.setBatchGrow(true);
+      if (!engine.initScript(readScript(new File(args[0])))) return;
+      long start = System.currentTimeMillis();
+      int done = engine.grow(Integer.parseInt(args[1]));
+      long elapsed = System.currentTimeMillis() - start;
+      System.out.println(done + " steps, " + engine.form.cell.size() + " cells"
+            + engine.form.budCountString() + ", " + elapsed + " ms");
+   }
+
+   //read a .gfs file into one string, lines separated by newlines
+   public static String readScript(File gfsFile) throws IOException {
+      BufferedReader br = new BufferedReader(new FileReader(gfsFile));
+      StringBuffer txt = new StringBuffer();
+      try {
+         while (br.ready()) {txt.append(br.readLine()); txt.append("\n");}
+      }
+      finally {
+         br.close();
+      }
+      return txt.toString();
+   }
+
+   //seed the random source of every form we create from now on, so runs repeat.
+   //overrides a seed given on the script's start line
+   public void setSeed(long seed){
+      this.seed = seed;
+   }
+
+   //square pyramid = triangular dipyramid, with one bud of type A
+   //for growing from the interactive buttons rather than a script
+   public void initForm(){
+      int[][] verts=new int[][] {{0,0,1}, {1,0,0}, {0,1,0}, {-1,0,0}, {0,-1,0}};
+      int[][] adj = new int[][] {{1,2,3,4}, {0,4,3,2}, {0,1,3}, {0,2,1,4}, {0,3,1}};
+      Form f = new Form(verts, adj, REGION_HOPS);
+      if (seed != null) f.setSeed(seed);
+      f.sphericalize();
+      BudType budTypeA = new BudType("A");            //one bud of type A
+      f.add(budTypeA);
+      budTypeA.createBud(f.cell.get(0));
+      code = null;
+      form = f;
+   }
+
+   //create a new form, parse the script, and seed the form as the script's
+   //"start n m [seed]" line says (n cells, m buds).  Returns false if the script
+   //has an error, which is reported to the listener.
+   public boolean initScript(String scriptStr){
+      int initialSize = 4;          //for tetrahedron
+      int initialBuds = 1;          //one initial bud
+
+      int[][] verts=new int[][] {{1,1,1}, {-1,1,-1}, {-1,-1,1}, {1,-1,-1}}; //tetrahedron
+      int[][] adj = new int[][] {{1,2,3}, {0,3,2}, {0,1,3}, {0,2,1}};
+      form = new Form(verts, adj, REGION_HOPS);   //create form to hold budTypes
+      if (seed != null) form.setSeed(seed);
+      form.sphericalize();
+
+      scriptStr = scriptStr.replace(";", "\n");       //treat semi as line delimiter
+      scriptStr = scriptStr.replace(",", "\n");       //treat comma as line delimiter
+      scriptStr = scriptStr.replace("red",   "color 255 0 0");
+      scriptStr = scriptStr.replace("green", "color 0 255 0");
+      scriptStr = scriptStr.replace("blue",  "color 0 0 255");
+      scriptStr = scriptStr.replace("yellow","color 255 255 0");
+      scriptStr = scriptStr.replace("orange","color 255 128 0");
+      scriptStr = scriptStr.replace("purple","violet");
+      scriptStr = scriptStr.replace("violet","color 255 0 255");
+      scriptStr = scriptStr.replace("white", "color 255 255 255");
+      scriptStr = scriptStr.replace("black", "color 32 32 32");
+      scriptStr = scriptStr.replace("gray",  "color 128 128 128");
+      String[] line = scriptStr.split("\\n");         //Parse script
+
+      //check for special first line syntax
+      Parser firstLine = new Parser(line[0], new String[] {"2start"}, form.budTypes);
+      if (firstLine.isLegal() && firstLine.getCommandWord().equals("start")){
+         initialSize = firstLine.getArg1();                  //"start n m"  n cells, m buds
+         initialBuds = firstLine.getArg2();
+         if (firstLine.getNArgs() == 3 && seed == null)      //"start n m s" also seeds
+            form.setSeed(firstLine.getArg3());
+         if (initialSize < initialBuds) {
+            report("Can't have more buds than cells!");
+            return false;
+         }
+         line[0] = "";                         //hide the start line from remainder of parser
+      }
+
+      BudType previousBT = null;
+      for (int i=0; i<line.length; i++){                     //1st pass.  Find BudType defns
+         String name = Parser.wordColon(line[i]);
+         if (name != null){
+            BudType bt = new BudType(name);
+            form.add(bt);
+            if (previousBT != null) previousBT.stepEnd = i;
+            bt.stepStart = i+1;                              //note where they start
+            previousBT = bt;
+         }
+      }
+      if (previousBT != null) previousBT.stepEnd = line.length;  // end of last one
+      if (previousBT == null) report("Warning: no definitions in script");
+
+      code = new Instruction[line.length];                       //2nd pass
+      for (int i=0; i<line.length; i++){
+         Parser p = new Parser(line[i], COMMANDS, form.budTypes);
+         if (!p.isLegal()){
+            report("Script error, line "+(i+1)+": "+p.getErrorExplanation());
+            return false;
+         }
+         code[i] = new Instruction(p);                           //compile it
+      }
+      if (form.budTypes.size() > 0){          //initial blob
+         BudType bt = form.budTypes.get(0);   //1st budtype in script
+         bt.createBud(form.cell.get(0));      //create one in cell 0
+         Bud bud = bt.getBuds().get(0);       //use it
+         for (int i = 0; i<initialSize-4; i++){
+            bud.chooseGeneralVertex();
+            bud.divideChosenCell();
+            relax();
+            afterDivision();
+         }
+         for (int i=1; i<initialBuds; i++)        //create the rest
+            bt.createBud(form.cell.get(i));
+         for (int repeat=0; repeat<10; repeat++)  //spread them out
+            for (Bud b : bt.getBuds()){
+               b.repel(bt);
+               relax();
+            }
+      }
+      return true;
+   }
+
+   //one pass of the main loop in script mode: a bud acts, then we relax.
+   //returns true if some bud acted
+   public boolean step(){
+      form.center();
+      Bud nextBud = form.chooseNextToDivide();   //balance between all budTypes
+      if (nextBud != null) nextBud.act(this);
+      relax();                                   //jiggle xyz's
+      return nextBud != null;
+   }
+
+   //a step in batch mode: the bud chosen does all of its current grow line
+   //(see Bud.actBatch), and the cells it divided have their neighborhood
+   //relaxed once at the end, rather than each in turn.  The form is centered
+   //once, and the random relaxing is one sweep:  relaxCount cells for the
+   //first division and half that for each after, since the batch's own
+   //neighborhood has just been relaxed.
+   //returns the number of actions done, 0 if no bud acted
+   public int stepBatch(){
+      form.center();
+      Bud nextBud = form.chooseNextToDivide();
+      int done = 0;
+      if (nextBud != null){
+         touched.clear();
+         done = nextBud.actBatch(this, touched);
+         form.springAround(touched, 2);
+      }
+      relax(relaxCount * (Math.max(done, 1) + 1) / 2);   //one sweep, half per extra division
+      return done;
+   }
+
+   //grow a whole grow line per step from now on, or go back to one division
+   //per step.  Batches are faster but use the random numbers in a different
+   //order, so a seeded run grows differently in the two modes.
+   //For grow() only:  the GUI's loop still acts one division at a time
+   public void setBatchGrow(boolean batch){
+      batchGrow = batch;
+   }
+
+   //a step in parallel mode:  up to growBatch buds are chosen in turn, as
+   //step would, and each picks its cell.  A bud drawn again in the same step
+   //is passed over, so none picks twice or is frozen by its own batch.
+   //Those whose cells are far enough apart (see Form.claim) divide
+   //together, the rest lose their turn.  The
+   //splits are made in the order chosen and only the region repairs, which
+   //don't depend on each other, run on the pool, so a seeded run grows the
+   //same however the threads are scheduled.  A bud with set-up lines to run
+   //ends the batch, and runs them once the others have divided.
+   //returns the number of buds that acted, 0 if none could
+   public int stepParallel(){
+      form.center();
+      form.startClaims();
+      batch.clear();
+      chosen.clear();
+      seen.clear();
+      Bud last = null;                           //has set-up lines to run
+      int done = 0;
+      for (int k=0; k<growBatch; k++){
+         Bud b = form.chooseNextToDivide(seen); //picks its cell too, see BudType
+         if (b == null) continue;              //none, or drawn already this step
+         if (b.actCount == 0) {
+            last = b;
+            done++;
+            break;
+         }
+         if (b.generalMode) b.pickCell();        //that one wasn't general
+         Cell c = b.nextCellToDivide;
+         if (c == null) {                        //had its turn, as in step
+            done++;
+            continue;
+         }
+         if (b.sleepMode) b.nextCellToDivide = null;
+         else if (form.claim(c)) {
+            batch.add(b);
+            chosen.add(c);
+         }
+         else {
+            b.nextCellToDivide = null;
+            continue;
+         }
+         b.actCount--;
+         done++;
+      }
+      int m = batch.size();
+      double[][] out = new double[m][3];
+      for (int i=0; i<m; i++) chosen.get(i).normal(out[i]);   //outward, before splitting
+      List<Cell> sibs = form.divideAll(chosen, growPool);
+      touched.clear();
+      for (int i=0; i<m; i++){
+         Bud b = batch.get(i);
+         b.finishDivision(sibs.get(i), out[i], touched);
+      }
+      form.springAround(touched, 2);
+      if (last != null) last.act(this);
+      for (int i=0; i<Math.max(done, 1); i++) relax();
+      return done;
+   }
+
+   //choose up to batch buds per step and divide those far enough apart
+   //together, with threads workers.  threads 0 means go back to one bud per step
+   public void setParallelGrow(int batch, int threads){
+      if (batch <= 0 && threads > 0) throw new IllegalArgumentException("batch must be at least 1");
+      growBatch = batch;
+      if (growPool != null) growPool.shutdown();
+      growPool = (threads > 0) ? new ForkJoinPool(threads) : null;
+   }
+
+   //run the script for n bud actions, or until no bud is left that can act.
+   //in batch mode the last batch may go past n.
+   //returns the number of actions done
+   public int grow(int n){
+      int done = 0;
+      int idle = 0;                              //consecutive steps with no action
+      while (done < n && idle < MAX_IDLE_STEPS && form.countLiveBuds() > 0){
+         int acted;
+         if (growPool != null) acted = stepParallel();
+         else acted = batchGrow ? stepBatch() : (step() ? 1 : 0);
+         if (acted > 0) {
+            done += acted;
+            idle = 0;
+         }
+         else idle++;
+      }
+      return done;
+   }
+
+   //relax some places    TODO: pick high stress ones?
+   //returns # of cells moved.  That is relaxCount in parallel sweeps too,
+   //which draw more cells until as many have moved (see relaxParallel)
+   public int relax(){
+      return relax(relaxCount);
+   }
+   
+   //same as above, count cells instead of relaxCount.  Sweeps only pay with
+   //more than one worker, on more than one cpu, and more cells than make one
+   //task of springXYZ, so otherwise we relax one at a time even with a pool
+   int relax(int count){
+      if (relaxPool != null && count > Form.SPRING_LEAF
+            && Math.min(relaxPool.getParallelism(), Runtime.getRuntime().availableProcessors()) > 1)
+         return relaxParallel(count);
+      for (int i=0; i<count; i++){
+         int j = form.rnd.nextInt(form.cell.size());
+         form.springXYZ(form.cell.get(j));
+      }
+      return count;
+   }
+   
+   //relax sweeps of the given number of cells at a time, with their spring
+   //moves computed in parallel on the given # of threads.  threads 0 means
+   //go back to relaxing one cell at a time, sweep cells per step
+   public void setParallelRelax(int sweep, int threads){
+      relaxCount = sweep;
+      if (relaxPool != null) relaxPool.shutdown();
+      relaxPool = (threads > 0) ? new ForkJoinPool(threads) : null;
+   }
+   
+   //Jacobi sweeps until count cells have moved, as many as relax does
+   //one at a time.  A sweep draws distinct random cells, by a partial
+   //shuffle of relaxOrder, but moves only those whose regions don't clash
+   //(see Form.springXYZ), which on a small form may be few of them.  So
+   //further sweeps, each a fresh draw, make up the rest.
+   //returns # of cells moved
+   private int relaxParallel(int count){
+      int n = form.cell.size();
+      if (n != relaxN){                        //cells were added or removed
+         if (relaxOrder.length < n) relaxOrder = Arrays.copyOf(relaxOrder, Math.max(64, 2*n));
+         if (n < relaxN) relaxN = 0;           //renumbered: start over
+         for (int i=relaxN; i<n; i++) relaxOrder[i] = i;
+         relaxN = n;
+      }
+      int moved = 0;
+      while (moved < count){                   //each sweep moves at least one
+         int m = Math.min(count - moved, n);
+         for (int i=0; i<m; i++){
+            int j = i + form.rnd.nextInt(n-i);
+            int t = relaxOrder[i];
+            relaxOrder[i] = relaxOrder[j];
+            relaxOrder[j] = t;
+         }
+         moved += form.springXYZ(relaxOrder, m, relaxPool);
+      }
+      return moved;
+   }
+
+   //a bud action for each legal command, except grow is handled separately
+   void execute(Instruction in, Bud b){
+      switch (in.op){
+      case NOOP: break;                 //(no operation, e.g. blank line)
+      case BLOB: b.makeBlob(in.arg1, this); break;
+      case DISPERSE: b.disperse(in.budType, in.arg1, this); break;
+      case FREEZE: b.freeze(); break;
+      case DIE: b.die(); break;
+      case LARGER: b.larger(0.1); break;
+      case SMALLER: b.larger(-0.1); break;
+      case INWARDS: b.inwards(); break;
+      case OUTWARDS: b.outwards(); break;
+      case UPWARDS: 
+      case DOWNWARDS: 
+      case HEADTOWARDS: b.towards(in.direction); break;
+      case RADIAL: b.towards(b.cell.xyz()); break;
+      case MUSTFACE: b.mustface(in.direction); break;
+      case NOCOLLISIONCHECK: b.setCollisionCheck(false); break;
+      case FATNESS: b.fatness = in.arg1; break;
+      case SIZE: b.setSize(in.arg1/20.0); break;     //10=default size
+      case RING: b.ring(in.budType, 2); break;
+      case FILL: b.fill(in.budType); break;
+      case SPAWN: b.spawn(in.budType, false); break;
+      case TRAIL: b.spawn(in.budType, true); break;
+      case BECOME: b.become(in.budType); break;
+      case REPEL: b.repel(in.budType); break;
+      case LINE: b.formLine(in.arg1); break;
+      case FLAT: b.cell.setTextureFlat(); break;
+      case BUMP: b.cell.setTextureBump(); break;
+      case SPIKE: b.cell.setTextureSpike(); break;
+      case WEB: b.cell.setTextureWeb(); break;
+      case HAIRY: b.cell.setTextureHairy(); break;
+      case TEXTURE: b.setBudTexture(in.arg1, in.arg2, in.arg3); break;
+      case COLOR: b.setBudColor(in.arg1, in.arg2, in.arg3); break;
+      case TUBE: b.tube(); break;
+      default: report("Parsing bug: " + in.op);   //grow, sleep, general are the bud's own
+      }
+   }
+
+   //pass message to listener, or print it if nobody is listening
+   void report(String msg){
+      if (listener != null) listener.report(msg);
+      else System.out.println(msg);
+   }
+
+   //let the listener show intermediate steps of a multi-division command
+   void afterDivision(){
+      if (listener != null) listener.afterDivision();
+   }
+
+   ////////////////////////////// Triangle Mesh methods //////////////////////////
+
+   //display data on demand, colored and textured as assigned by the script
+   public DisplayInfo makeDisplayInfo(boolean textured, int nSmooth){
+      Color[] dispColor = form.colorAllByAssigned();
+      if (!textured) return makeTriangles(dispColor, nSmooth);
+      return makeTexture(dispColor, form.getAssignedTexture(), nSmooth);
+   }
+
+   //create triangles from cell adjacency info
+   public DisplayInfo makeTriangles(Color[] dispColor, int nSmooth) {
+      return makeTriangles(dispColor, nSmooth, null);
+   }
+
+   //same as above, refilling ans instead of allocating, unless it is null
+   public DisplayInfo makeTriangles(Color[] dispColor, int nSmooth, DisplayInfo ans) {
+      return makeTriangles(snapshot(dispColor, null), nSmooth, ans);
+   }
+
+   //the form as it is now, for building display data from
+   private FormSnapshot snapshot(Color[] dispColor, Texture[] dispTexture){
+      FormSnapshot s = new FormSnapshot();
+      synchronized(form){
+         s.take(form, dispColor, dispTexture);
+      }
+      return s;
+   }
+
+   //triangles from a snapshot, which needs no lock, refilling ans unless it is null
+   public DisplayInfo makeTriangles(FormSnapshot s, int nSmooth, DisplayInfo ans) {
+      double[] vSmooth = s.smooth(nSmooth);
+      if (ans == null) ans = new DisplayInfo();
+      ans.setSize(s.n, s.nFaces, s.nEdges);
+      for (int i=0; i<ans.nVert; i++)      //the points and their colors
+         ans.setVert(i, vSmooth[3*i], vSmooth[3*i+1], vSmooth[3*i+2], s.rgb[i]);
+
+      int[] tri = ans.tri;
+      int[] line = ans.line;
+      int j = 0;                           //index the triangles
+      int k = 0;                           //index the lines
+      Topology t = s.top;
+      for (int v1=0; v1<t.n; v1++){
+         if (t.degree(v1)<3)
+            throw new IllegalArgumentException("Bug 4");
+         int v2 = t.to[t.start[v1+1]-1];        //start with last one for wrap-around
+         for (int h=t.start[v1]; h<t.start[v1+1]; h++){
+            int v3 = t.to[h];
+            if (v1 < v2  && v1 < v3){             //elim. dupl.
+               tri[j++] = v1;
+               tri[j++] = v2;
+               tri[j++] = v3;
+               if (v1 < v2) {line[k++]=v1; line[k++]=v2;}  //2 pts per line
+               if (v2 < v3) {line[k++]=v2; line[k++]=v3;}
+               if (v3 < v1) {line[k++]=v3; line[k++]=v1;}
+            }
+            v2 = v3;                              //v2 always just before v3
+         }
+      }
+      ans.nLine = k/2;
+      return ans;
+   }
+
+   //create bumpy dual texture from cell adjacency info
+   //alpha = bump height, beta = radius, gamma = height at radius
+   //13 vertices per bump if 6 triangles per edge
+   public DisplayInfo makeTexture(Color[] dispColor, Texture[] dispTexture, int nSmooth) {
+      return makeTexture(dispColor, dispTexture, nSmooth, null);
+   }
+
+   //same as above, refilling ans instead of allocating, unless it is null
+   public DisplayInfo makeTexture(Color[] dispColor, Texture[] dispTexture, int nSmooth, DisplayInfo ans) {
+      return makeTexture(snapshot(dispColor, dispTexture), nSmooth, ans);
+   }
+
+   //bumps from a snapshot with textures, which needs no lock, refilling ans
+   //unless it is null.  bump points go straight into ans, so nothing is
+   //allocated per cell
+   public DisplayInfo makeTexture(FormSnapshot s, int nSmooth, DisplayInfo ans) {
+      double[] smooth = s.smooth(nSmooth);
+      int numPts = s.n + 6*s.nFaces;
+      if (ans == null) ans = new DisplayInfo();
+      ans.setSize(numPts, 6*s.nEdges, 0);                  //no lines
+      int[] tri = ans.tri;                                 //in groups of 3
+      double[] pts = new double[0];                        //one bump's points
+      double[] normal = new double[3];
+      int black = Color.BLACK.getRGB();
+      Topology top = s.top;
+      int j=0;                                             //j counts the new vertices
+      int t=0;                                             //t counts the new triangles
+
+      for (int v1=0; v1<s.n; v1++){                        //make bump around v1
+         int ctr = top.degree(v1);
+         if (pts.length < 3*(2*ctr+1)) pts = new double[3*(2*ctr+1)];
+         s.normal(v1, normal);
+         bumpPoints(top, v1, smooth, normal, s.texture[v1], pts);
+         int rgb = s.rgb[v1];
+
+                      //Now pack them as c, p[0], p[1], ..., q[0], ...  starting at j.
+         int C=j;     //Hold C to reference them:  c at C,  p[k] at P=C+1+k, q[k] at Q=C+1+ctr+k
+         int P=C+1;
+         int Q=P+ctr;
+         ans.setVert(j++, pts[0], pts[1], pts[2], rgb);             //top center of bump
+         for (int k=1; k<=ctr; k++)                                 //centers of triangles
+            ans.setVert(j++, pts[3*k], pts[3*k+1], pts[3*k+2], black);
+         int darker = darker(rgb);
+         for (int k=ctr+1; k<=2*ctr; k++)                           //a bit closer in
+            ans.setVert(j++, pts[3*k], pts[3*k+1], pts[3*k+2], darker);
+         for (int k=0; k<ctr; k++){                //18 facets per 6-sided bump
+            tri[t++]=C;              tri[t++]=Q+k;   tri[t++] = Q+((k+1)%ctr);   //inner tri
+            tri[t++]=Q+k;            tri[t++]=P+k;   tri[t++] = Q+((k+1)%ctr);   //middle
+            tri[t++]=Q+((k+1)%ctr);  tri[t++]=P+k;   tri[t++] = P+((k+1)%ctr);   //outer
+         }
+      }
+      return ans;
+   }
+
+   //rgb as Color.darker() would make it, without making a Color
+   static int darker(int rgb){
+      int r = (int) (((rgb >> 16) & 255) * 0.7);
+      int g = (int) (((rgb >> 8) & 255) * 0.7);
+      int b = (int) ((rgb & 255) * 0.7);
+      return (r << 16) | (g << 8) | b;
+   }
+
+   //points of the bump makeTexture puts around cell v1, from smoothed positions:
+   //top center c, then p[k] at the centers of the surrounding triangles, then
+   //q[k] a bit in from them.  Put in pts as x,y,z each, so pts needs room for
+   //3*(2n+1) doubles.  normal is v1's unit normal.  Returns n = # neighbors
+   //t is the form's topology, or a snapshot's
+   int bumpPoints(Topology t, int v1, double[] smooth, double[] normal, Texture tx, double[] pts){
+      int h0 = t.start[v1];
+      int n = t.degree(v1);
+      int s = 3*v1;
+      for (int a=0; a<3; a++)
+         pts[a] = smooth[s+a] + tx.alpha*normal[a];      //top center of bump
+      int prev = 3*t.to[h0+n-1];                       //start with last one for wrap-around
+      for (int k=0; k<n; k++){
+         int cur = 3*t.to[h0+k];
+         int p = 3*(1+k);
+         int q = 3*(1+n+k);
+         for (int a=0; a<3; a++){
+            pts[p+a] = (smooth[s+a] + smooth[prev+a] + smooth[cur+a]) / 3.0;
+            pts[q+a] = tx.beta*smooth[s+a] + (1-tx.beta)*pts[p+a] + tx.gamma*normal[a];
+         }
+         prev = cur;
+      }
+      return n;
+   }
+
+   //write the form to a binary STL file a cell at a time, never building a
+   //DisplayInfo, so even huge forms need little memory.  Plain triangles if
+   //dispTexture is null, else the bumps of makeTexture.  Growth waits meanwhile
+   public void writeSTL(File file, Texture[] dispTexture, int nSmooth, String header,
+         ProgressListener progress) throws IOException {
+      synchronized(form){
+         double[] smooth = form.makeSmooth(nSmooth);
+         long nFacets = (dispTexture == null) ? form.countFaces() : 6*form.countEdges();
+         StlWriter w = new StlWriter(file, header, nFacets, progress);
+         try {
+            double[] pts = new double[0];
+            double[] normal = new double[3];
+            Topology t = form.topology();
+            for (Cell v1 : form.cell){
+               int n = t.degree(v1.index);
+               if (dispTexture == null){
+                  int i = v1.index;
+                  int v2 = t.to[t.start[i+1]-1];
+                  for (int h=t.start[i]; h<t.start[i+1]; h++){
+                     int v3 = t.to[h];
+                     if (i < v2  && i < v3)                  //each triangle once
+                        facet(w, smooth, i, v2, v3);
+                     v2 = v3;
+                  }
+                  continue;
+               }
+               if (pts.length < 3*(2*n+1)) pts = new double[3*(2*n+1)];
+               v1.normal(normal);
+               bumpPoints(t, v1.index, smooth, normal, dispTexture[v1.index], pts);
+               int P = 1;                                   //c at 0, p[k] at P+k, q[k] at Q+k
+               int Q = P+n;
+               for (int k=0; k<n; k++){                     //18 facets per 6-sided bump
+                  int k1 = (k+1)%n;
+                  facet(w, pts, 0,    Q+k, Q+k1);          //inner tri
+                  facet(w, pts, Q+k,  P+k, Q+k1);          //middle
+                  facet(w, pts, Q+k1, P+k, P+k1);          //outer
+               }
+            }
+         }
+         finally {
+            w.close();
+         }
+      }
+   }
+
+   //facet of points a, b, c of pts.  x flipped and b, c swapped, like
+   //StlWriter.write, to match the handedness of the GL view
+   private static void facet(StlWriter w, double[] pts, int a, int b, int c) throws IOException {
+      w.facet(-(float) pts[3*a], (float) pts[3*a+1], (float) pts[3*a+2],
+              -(float) pts[3*c], (float) pts[3*c+1], (float) pts[3*c+2],
+              -(float) pts[3*b], (float) pts[3*b+1], (float) pts[3*b+2]);
+   }
+
+}
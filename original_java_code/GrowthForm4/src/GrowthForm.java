@@ -17,6 +17,7 @@ import javax.swing.JTabbedPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -38,30 +39,23 @@ import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
 
-public class GrowthForm implements Runnable {
+public class GrowthForm implements Runnable, GrowthListener {
 
    private ButtonGroup bGroup3 = new ButtonGroup();
    private ButtonGroup bGroup2 = new ButtonGroup();
    static Thread displayT = new Thread(new GrowthForm());
-   volatile Form form;
-   int regionR = 6;           //region radius from center for storage and spring calcs.
+   GrowthEngine engine = new GrowthEngine(this);  //does the growing, we just display it
    GLCanvas canvas = new GLCanvas();
-   DisplayInfo displayInfo = null;    //for display and stl 
-   Random rnd = new Random();
+   DisplayProducer producer = new DisplayProducer(this);   //builds what we display
    //int nGrowers = 1;          //desired number
    double alpha = 0.3;          //bump height
    double beta = 0.2;           //bump radius
@@ -69,13 +63,12 @@ public class GrowthForm implements Runnable {
    //int growSize = 2;          //initial size of growth area
    private int nGrow;         //#steps to grow after button pushed
    Bud nextBud;               //the one which will divide a cell next
-   private boolean displayReady=false;
+   private volatile boolean displayReady=false;
    private boolean okFlag=false;
    private boolean scriptMode;  //script or interactive?
    private boolean resetFlag = false;
    private boolean stlFlag = false;
-   final static int REGION_HOPS = 4;  //how big is the local region?
-   Parser[] ps;                 //parsed script lines 
+   private volatile boolean exporting = false;   //STL file being written
    Robot robot;                 //for video capture
    boolean captureMode;
    int nScreen = 0;
@@ -138,10 +131,14 @@ public class GrowthForm implements Runnable {
       ActionListener viewer = new ActionListener(){
          public void actionPerformed(ActionEvent e){
             if (displayReady) canvas.display();
-            state(form.cell.size() + " cells" + form.budCountString());
+            producer.requestFrame();         //next frame, if anything changed
+            state(engine.form.cell.size() + " cells" + engine.form.budCountString());
          }
       };
       new Timer(33, viewer).start();       //start animation and GL display
+      Thread producerT = new Thread(producer, "display producer");
+      producerT.setDaemon(true);
+      producerT.start();
 
       scriptMode = false;      // running from the buttons, not script
       initForm();       
@@ -149,11 +146,11 @@ public class GrowthForm implements Runnable {
       nGrow = 0;               //# steps still to grow after button pushed
 
       while(true){                        // MAIN LOOP:
-         form.center();   
+         engine.form.center();   
 
          if (nextBud == null && nGrow>0){       //First choose next bud to act                  
             if (scriptMode)
-               nextBud = form.chooseNextToDivide();   //balance between all budTypes...
+               nextBud = engine.form.chooseNextToDivide();   //balance between all budTypes...
             else {
                nextBud = guiBud();                    //...or user-selected bud
                if (nextBud!=null) nextBud.chooseCell();
@@ -162,7 +159,7 @@ public class GrowthForm implements Runnable {
 
          if (scriptMode && nGrow > 0) {                     //Then do one action
             if (nextBud != null){
-               nextBud.act(ps, this);
+               nextBud.act(engine);
                nGrow--;
                nextBud = null;
             }
@@ -173,7 +170,7 @@ public class GrowthForm implements Runnable {
             okFlag=false;
             nextBud=null;
          }       
-         relax();                           //jiggle xyz's
+         engine.relax();                    //jiggle xyz's
 
          if (resetFlag){
             if (scriptMode) initScript(); else initForm();
@@ -181,9 +178,9 @@ public class GrowthForm implements Runnable {
             resetFlag = false;
          }     
          
-         maybeGenerateGraphics();            //prepare xyz and color daya for display
+         maybeGenerateGraphics();            //tidy up and spin; display data is made elsewhere
          
-         if (stlFlag){                       //stop loop to output file
+         if (stlFlag){                       //pick file, then it is written on its own thread
             exportBinarySTL();
             stlFlag = false;
          }
@@ -194,17 +191,28 @@ public class GrowthForm implements Runnable {
       }
    }
    
+   //engine divided a cell in the middle of a blob or seed: show it
+   public void afterDivision(){
+      maybeGenerateGraphics();
+      maybeCapture();
+   }
+   
    //generate frame of video every nth division
    public void maybeCapture(){
       if (captureMode && nScreen%nScreenInterval == 0) capture("growth", nScreen/nScreenInterval);
       nScreen++;     
    }
    
-   //generate frame, but skip if in video mode and frame is being skipped
+   //display data is made by the producer once per frame, but in video mode
+   //each captured frame is made here, so it shows this very step
    void maybeGenerateGraphics(){
-      form.cleanup();
       spinAngle += getSpinRate();     //rotation
-      if (captureMode && nScreen%nScreenInterval != 0) return;
+      if (captureMode && nScreen%nScreenInterval == 0) producer.produce(true);
+   }
+   
+   //copy form, which the caller has locked, into s, colored and textured
+   //as the GUI says to show it.  called by the producer
+   void takeSnapshot(Form form, FormSnapshot s){
       Color[] dispColor;     //colors for cells    
       if (colorByAssignedButton.isSelected()) dispColor = form.colorAllByAssigned(); 
       else if (colorBySizeButton.isSelected()) dispColor = form.colorAllByRadius(); 
@@ -212,21 +220,54 @@ public class GrowthForm implements Runnable {
       else if (colorByNButton.isSelected())dispColor =  form.colorAllByN();
       else dispColor = form.colorAllByGrowers(Color.RED, Color.YELLOW);
       if (blendColorCheckBox.isSelected()) dispColor = form.blendColor(dispColor);     
-      if (showNextCheckBox.isSelected() && nextBud!=null) 
-         dispColor[nextBud.getChoosenCell().index] = Color.WHITE;
-
-      if (trianglesRadioButton.isSelected())
-         displayInfo = makeTriangles(dispColor);   //for display and stl export
+      Cell next = showNext();
+      if (next != null && next.form == form) dispColor[next.index] = Color.WHITE;
+      s.take(form, dispColor, displayTexture(form));
+   }
+   
+   //build the display data from a snapshot.  Needs no form lock
+   void buildDisplayInfo(FormSnapshot s, DisplayInfo d){
+      if (s.texture == null)
+         engine.makeTriangles(s, nSmooth(), d);
       else
-      {
-         Texture[] dispTexture;
-         if (solidTextureRadioButton.isSelected())
-            dispTexture = form.getSolidTexture(alpha, beta, gamma);
-         else
-            dispTexture = form.getAssignedTexture();
-         if (blendTextureCheckBox.isSelected()) dispTexture = form.blendTexture(dispTexture); 
-         displayInfo = makeTexture(dispColor, dispTexture);
-      }
+         engine.makeTexture(s, nSmooth(), d);
+      displayReady = true;
+   }
+   
+   //cell to show in white as next to divide, or null
+   Cell showNext(){
+      Bud b = nextBud;
+      if (!showNextCheckBox.isSelected() || b == null) return null;
+      Cell c = b.getChoosenCell();
+      return (c == null || c.index < 0) ? null : c;
+   }
+   
+   //everything chosen in the GUI that changes the display data, as a string,
+   //so the producer can tell whether to build again
+   String displaySettings(){
+      Cell next = showNext();
+      return colorByAssignedButton.isSelected() + " " + colorBySizeButton.isSelected() + " "
+            + colorByFreezeButton.isSelected() + " " + colorByNButton.isSelected() + " "
+            + blendColorCheckBox.isSelected() + " " + (next == null ? -1 : next.index) + " "
+            + trianglesRadioButton.isSelected() + " " + solidTextureRadioButton.isSelected() + " "
+            + blendTextureCheckBox.isSelected() + " " + alpha + " " + beta + " " + gamma + " " + nSmooth();
+   }
+   
+   //textures as chosen in the GUI, or null if showing plain triangles
+   Texture[] displayTexture(){
+      return displayTexture(engine.form);
+   }
+   
+   //same as above, for the given form
+   Texture[] displayTexture(Form form){
+      if (trianglesRadioButton.isSelected()) return null;
+      Texture[] dispTexture;
+      if (solidTextureRadioButton.isSelected())
+         dispTexture = form.getSolidTexture(alpha, beta, gamma);
+      else
+         dispTexture = form.getAssignedTexture();
+      if (blendTextureCheckBox.isSelected()) dispTexture = form.blendTexture(dispTexture); 
+      return dispTexture;
    }
    
    public float getSpinAngle(){
@@ -234,30 +275,11 @@ public class GrowthForm implements Runnable {
    }
    
    public void initForm(){         //square pyramid = triangular dipyramid
-         int[][] verts=new int[][] {{0,0,1}, {1,0,0}, {0,1,0}, {-1,0,0}, {0,-1,0}};
-         int[][] adj = new int[][] {{1,2,3,4}, {0,4,3,2}, {0,1,3}, {0,2,1,4}, {0,3,1}};
-         form = new Form(verts, adj, REGION_HOPS);          
-         form.sphericalize();
-         //for (Cell v : form.cell) v.setRadiusDontDiffuse(cellRadius);  //current radius
-         BudType budTypeA = new BudType("A");            //one bud of type A
-         form.add(budTypeA);
-         budTypeA.createBud(form.cell.get(0));
-//         BudType budTypeB = new BudType("B");            //one bud of type B
-//         form.add(budTypeB);
-//         budTypeB.createBud(form.cell.get(1)); 
-//         budTypeB.getBuds().get(0).fatness=1;
-   }
-   
-   //relax some places    TODO: pick high stress ones?
-   public void relax(){
-      for (int i=0; i<50; i++){
-         int j = rnd.nextInt(form.cell.size());
-         form.springXYZ(form.cell.get(j));
-      }
+      engine.initForm();
    }
 
    public DisplayInfo getDisplayInfo() {
-          return displayInfo;
+          return producer.getDisplayInfo();
    }
    
    //sleep for n milliseconds
@@ -273,53 +295,6 @@ public class GrowthForm implements Runnable {
    
    ///////////////////// Command Line Parsing and Script Execution ////////////////////
    
-   //word is flagged with T if followed by BudType or n if followed by n integers
-   //or U if followed by one budtype then 1 integer
-   final String[] COMMANDS = {"1grow", "1sleep", "1fatness", "1size", "1line",
-        "Tring", "Tfill", "Tspawn", "Ttrail", "Tbecome", "Trepel",
-        "0noop", "0freeze", "0larger", "0smaller", "0inwards", "0outwards", "0die",
-        "0upwards", "0downwards", "0radial", "0nocollisioncheck", "1general",
-        "0flat", "0spike", "0bump", "0web", "0hairy", "3texture", "3color",
-        "3mustface", "3headtowards", "1blob", "Udisperse", "0tube"};
-     
-   //a bud action for each legal command, except grow is handled separately
-   void doParsedCommand(Parser p, Bud b){
-      String cmdWord = p.getCommandWord();
-      if (cmdWord.equals("noop")) ;  //(no operation, e.g. blank line)
-      else if (cmdWord.equals("blob")) b.makeBlob(p.getArg1(), this);
-      else if (cmdWord.equals("disperse")) b.disperse(p.getBudType(), p.getArg1(), this);
-      else if (cmdWord.equals("freeze")) b.frozen=true;
-      else if (cmdWord.equals("die"))  b.die();
-      else if (cmdWord.equals("larger"))  b.larger(0.1);
-      else if (cmdWord.equals("smaller")) b.larger(-0.1);
-      else if (cmdWord.equals("inwards")) b.inwards();
-      else if (cmdWord.equals("outwards")) b.outwards();
-      else if (cmdWord.equals("upwards")) b.towards(new XYZ(0,0,1));
-      else if (cmdWord.equals("downwards")) b.towards(new XYZ(0,0,-1));
-      else if (cmdWord.equals("headtowards")) b.towards(new XYZ(p.getArg1(), p.getArg2(), p.getArg3()));
-      else if (cmdWord.equals("radial")) b.towards(b.cell.xyz);
-      else if (cmdWord.equals("mustface")) b.mustface(new XYZ(p.getArg1(), p.getArg2(), p.getArg3()));
-      else if (cmdWord.equals("nocollisioncheck")) b.setCollisionCheck(false);
-      else if (cmdWord.equals("fatness")) b.fatness = p.getArg1();
-      else if (cmdWord.equals("size")) b.setSize(p.getArg1()/20.0);  //10=default size
-      else if (cmdWord.equals("ring")) b.ring(p.getBudType(), 2);
-      else if (cmdWord.equals("fill")) b.fill(p.getBudType());
-      else if (cmdWord.equals("spawn")) b.spawn(p.getBudType(), false);
-      else if (cmdWord.equals("trail")) b.spawn(p.getBudType(), true);
-      else if (cmdWord.equals("become")) b.become(p.getBudType());
-      else if (cmdWord.equals("repel")) b.repel(p.getBudType());
-      else if (cmdWord.equals("line")) b.formLine(p.getArg1());
-      else if (cmdWord.equals("flat")) b.cell.setTextureFlat();
-      else if (cmdWord.equals("bump")) b.cell.setTextureBump();
-      else if (cmdWord.equals("spike")) b.cell.setTextureSpike();
-      else if (cmdWord.equals("web")) b.cell.setTextureWeb();
-      else if (cmdWord.equals("hairy")) b.cell.setTextureHairy();
-      else if (cmdWord.equals("texture")) b.setBudTexture(p.getArg1(), p.getArg2(), p.getArg3());
-      else if (cmdWord.equals("color")) b.setBudColor(p.getArg1(), p.getArg2(), p.getArg3());
-      else if (cmdWord.equals("tube")) b.tube();
-          else report("Parsing bug: " + cmdWord);
-   }
-   
    //interactive button clicked.  execute one typed line
    void doExecute(){
       scriptMode = false;
@@ -328,21 +303,21 @@ public class GrowthForm implements Runnable {
          Toolkit.getDefaultToolkit().beep();
          return;
       }
-      Parser p = new Parser(command.getText(), COMMANDS, form.budTypes);
+      Parser p = new Parser(command.getText(), GrowthEngine.COMMANDS, engine.form.budTypes);
       //create  bud types when they are needed:
       if (!p.isLegal() && p.getErrorExplanation().substring(0, 15).equals("Not a BudType: ")){
          String name = p.getErrorExplanation().substring(15);
          BudType bt = new BudType(name);
-         form.add(bt);
+         engine.form.add(bt);
          report("Autocreated BudType: " + name);
-         p = new Parser(command.getText(), COMMANDS, form.budTypes);
+         p = new Parser(command.getText(), GrowthEngine.COMMANDS, engine.form.budTypes);
       }
       if (!p.isLegal()){
          Toolkit.getDefaultToolkit().beep();      //not a command
          report(p.getErrorExplanation());
          return;
       } 
-      doParsedCommand(p, b);
+      engine.execute(new Instruction(p), b);
    }
 
     
@@ -354,7 +329,7 @@ public class GrowthForm implements Runnable {
       } catch (NumberFormatException e) {
          return null;
       }
-      for (BudType bt : form.budTypes)
+      for (BudType bt : engine.form.budTypes)
          if (bt.matchName(type.getText())){
             if (idx<0 || idx>=bt.getBuds().size()) return null;
             return bt.getBuds().get(idx);
@@ -363,93 +338,20 @@ public class GrowthForm implements Runnable {
    }
 
    private void initScript(){
-      int initialSize = 4;          //for tetrahedron
-      int initialBuds = 1;          //one initial bud
       Integer nToGrow = getN();     //value from text box
       if (nToGrow == null) return;
       nGrow=0;
       startScriptButton.setEnabled(false);
       continueButton.setEnabled(false);
       stopButton.setEnabled(true);
-      
-      int[][] verts=new int[][] {{1,1,1}, {-1,1,-1}, {-1,-1,1}, {1,-1,-1}}; //tetrahedron
-      int[][] adj = new int[][] {{1,2,3}, {0,3,2}, {0,1,3}, {0,2,1}};
-      form = new Form(verts, adj, REGION_HOPS);   //create form to hold budTypes
-      form.sphericalize();  
-      
-      String scriptStr = script.getText();            //script from GUI textbox
-      scriptStr = scriptStr.replace(";", "\n");       //treat semi as line delimiter
-      scriptStr = scriptStr.replace(",", "\n");       //treat comma as line delimiter
-      scriptStr = scriptStr.replace("red",   "color 255 0 0"); 
-      scriptStr = scriptStr.replace("green", "color 0 255 0"); 
-      scriptStr = scriptStr.replace("blue",  "color 0 0 255"); 
-      scriptStr = scriptStr.replace("yellow","color 255 255 0"); 
-      scriptStr = scriptStr.replace("orange","color 255 128 0"); 
-      scriptStr = scriptStr.replace("purple","violet"); 
-      scriptStr = scriptStr.replace("violet","color 255 0 255"); 
-      scriptStr = scriptStr.replace("white", "color 255 255 255"); 
-      scriptStr = scriptStr.replace("black", "color 32 32 32"); 
-      scriptStr = scriptStr.replace("gray",  "color 128 128 128"); 
-      String[] line = scriptStr.split("\\n");         //Parse script
-      
-      //check for special first line syntax
-      Parser firstLine = new Parser(line[0], new String[] {"2start"}, form.budTypes);
-      if (firstLine.isLegal() && firstLine.getCommandWord().equals("start")){
-         initialSize = firstLine.getArg1();                  //"start n m"  n cells, m buds
-         initialBuds = firstLine.getArg2();
-         if (initialSize < initialBuds) {
-            report("Can't have more buds than cells!");
-            stopScript();
-            return;
-         }
-         line[0] = "";                         //hide the start line from remainder of parser
-      }
-      
-      BudType previousBT = null;
-      for (int i=0; i<line.length; i++){                     //1st pass.  Find BudType defns
-         String name = Parser.wordColon(line[i]);
-         if (name != null){
-            BudType bt = new BudType(name);
-            form.add(bt);
-            if (previousBT != null) previousBT.stepEnd = i;
-            //if (previousBT==null && i!=0) report("Warning: first " + i + " lines ignored.");
-            bt.stepStart = i+1;                              //note where they start
-            previousBT = bt;
-         }       
-      } 
-      if (previousBT != null) previousBT.stepEnd = line.length;  // end of last one
-      if (previousBT == null) report("Warning: no definitions in script");
-      
-      ps = new Parser[line.length];                              //2nd pass
-      for (int i=0; i<line.length; i++){
-         ps[i] = new Parser(line[i], COMMANDS, form.budTypes);
-         if (!ps[i].isLegal()){
-            report("Script error, line "+(i+1)+": "+ps[i].getErrorExplanation());
-            stopScript();
-            return;
-         }
-      }
-      if (form.budTypes.size() > 0){          //initial blob
-         BudType bt = form.budTypes.get(0);   //1st budtype in script
-         bt.createBud(form.cell.get(0));      //create one in cell 0
-         Bud bud = bt.getBuds().get(0);       //use it
-         for (int i = 0; i<initialSize-4; i++){
-            bud.chooseGeneralVertex();
-            bud.divideChosenCell();
-            relax();
-            maybeGenerateGraphics();
-         }
-         for (int i=1; i<initialBuds; i++)        //create the rest
-            bt.createBud(form.cell.get(i));
-         for (int repeat=0; repeat<10; repeat++)  //spread them out
-            for (Bud b : bt.getBuds()){
-               b.repel(bt);
-               relax();
-            }
+      if (!engine.initScript(script.getText())){   //errors already reported
+         stopScript();
+         return;
       }
       nGrow = nToGrow; 
    }
    
+
    private void startScript(){             //button clicked
       int response;
       if (checkBoxVideo.isSelected()){
@@ -501,137 +403,16 @@ public class GrowthForm implements Runnable {
 
    //create triangles from cell adjacency info
    public DisplayInfo makeTriangles(Color[] dispColor) {
-      synchronized(form){
-         XYZ[] vSmooth = form.makeSmooth(nSmooth());
-         float[][] vert = new float[form.cell.size()][3];     //cell xyz coords
-         float[][] col = new float[form.cell.size()][3]; //3 rgb colors per cell
-         int[] tri = new int[3*form.countFaces()];         //in groups of 3
-         int[] line = new int[2*form.countEdges()];        //in pairs  TODO
-         
-       int i=0;                             //index the points
-       for (XYZ v : vSmooth){  
-          vert[i][0] = (float) v.x;
-          vert[i][1] = (float) v.y;
-          vert[i][2] = (float) v.z;
-          i++;
-       }
-
-       int ii=0;                             //their colors
-       for (Color c : dispColor)  
-          col[ii++] = c.getColorComponents(null);
-       
-         int j = 0;                           //index the triangles
-         int k = 0;                           //index the lines
-         for (Cell v1 : form.cell){
-            if (v1.adj.size()<3) 
-               throw new IllegalArgumentException("Bug 4");
-            Cell v2 = v1.adj.get(v1.adj.size()-1);   //start with last one for wrap-around
-            for (Cell v3 : v1.adj){
-               if (v1.index < v2.index  && v1.index < v3.index){     //elim. dupl.
-                  tri[j++] = v1.index;
-                  tri[j++] = v2.index;
-                  tri[j++] = v3.index;
-                  if (v1.index < v2.index) {line[k++]=v1.index; line[k++]=v2.index;}  //2 pts per line
-                  if (v2.index < v3.index) {line[k++]=v2.index; line[k++]=v3.index;} 
-                  if (v3.index < v1.index) {line[k++]=v3.index; line[k++]=v1.index;} 
-               }
-               v2 = v3;                              //v2 always just before v3
-            }
-         }
-         DisplayInfo ans = new DisplayInfo();         //pack it up to go
-         ans.vert = vert;  
-         ans.col = col;
-         ans.tri = tri;
-         ans.line = line;
-         displayReady=true;
-         return ans;
-      }
+      return engine.makeTriangles(dispColor, nSmooth());
    }
    
    //create bumpy dual texture from cell adjacency info
-   //alpha = bump height, beta = radius, gamma = height at radius
-   //13 vertices per bump if 6 triangles per edge
    public DisplayInfo makeTexture(Color[] dispColor, Texture[] dispTexture) {
-      synchronized(form){
-         XYZ[] vSmooth = form.makeSmooth(nSmooth());
-         int numPts = form.countVertices() + 6*form.countFaces();
-         float[][] vert = new float[numPts][3];     //cell xyz coords
-         float[][] col = new float[numPts][3];   //3 rgb colors per cell
-         int[] tri = new int[3*6*form.countEdges()];            //in groups of 3
-         int[] line = new int[0];                             //no lines
-         Form f = new Form(new int[0][0], new int[0][0], 0);  //no topology, just holds points
-         int j=0;                                             //j counts the new vertices
-         int t=0;                                             //t counts the new triangles
-         
-         for (Cell v1 : form.cell){                       //make bump around v1
-            Cell c = new Cell(f, XYZ.plus(vSmooth[v1.index], XYZ.scale(dispTexture[v1.index].alpha, v1.normal())));  //top center of bump
-            c.setColor(dispColor[v1.index]);
-            Cell[] p = new Cell[v1.adj.size()];  //points at centers of surrounding triangles
-            int ctr=0;                                //ctr counts the number of adjacent v's
-            Cell v2 = v1.adj.get(v1.adj.size()-1);   //start with last one for wrap-around
-            for (Cell v3 : v1.adj){
-               p[ctr] = new Cell(f, XYZ.triCenter(vSmooth[v1.index], vSmooth[v2.index], vSmooth[v3.index]));
-               p[ctr].setColor(Color.BLACK);
-               ctr++;
-               v2 = v3;                                //v2 always just before v3
-            }
-            Cell[] q = new Cell[v1.adj.size()];  //points a bit closer in than p
-            XYZ liftQ = XYZ.scale(dispTexture[v1.index].gamma, v1.normal());
-            for (int k=0; k<ctr; k++) {
-               q[k] = new Cell(f, XYZ.plus(XYZ.interpolate(dispTexture[v1.index].beta, vSmooth[v1.index], p[k].xyz), liftQ));
-               q[k].setColor(dispColor[v1.index].darker());
-            }
-
-//This is the previous code, before smoothing (faster)         
-//         for (Cell v1 : form.cell){                       //make bump around v1
-//            Cell c = new Cell(f, XYZ.plus(v1.xyz, XYZ.scale(alpha, v1.normal())));  //top center of bump
-//            c.setColor(v1.getColor());
-//            Cell[] p = new Cell[v1.adj.size()];  //points at centers of surrounding triangles
-//            int ctr=0;                                //ctr counts the number of adjacent v's
-//            Cell v2 = v1.adj.get(v1.adj.size()-1);   //start with last one for wrap-around
-//            for (Cell v3 : v1.adj){
-//               p[ctr] = new Cell(f, XYZ.triCenter(v1.xyz, v2.xyz, v3.xyz));
-//               p[ctr].setColor(Color.BLACK);
-//               ctr++;
-//               v2 = v3;                                //v2 always just before v3
-//            }
-//            Cell[] q = new Cell[v1.adj.size()];  //points a bit closer in than p
-//            XYZ liftQ = XYZ.scale(gamma, v1.normal());
-//            for (int k=0; k<ctr; k++) {
-//               q[k] = new Cell(f, XYZ.plus(XYZ.interpolate(beta, v1.xyz, p[k].xyz), liftQ));
-//               q[k].setColor(v1.getColor().darker());
-//            }
-            
-                         //Now pack them as c, p[0], p[1], ..., q[0], ...  starting at j.    
-            int C=j;     //Hold C to reference them:  c at C,  p[k] at P=C+1+k, q[k] at Q=C+1+ctr+k 
-            int P=C+1;
-            int Q=P+ctr;
-            {vert[j][0]=(float)c.xyz.x;      vert[j][1]=(float)c.xyz.y;      vert[j][2]=(float)c.xyz.z;  
-               col[j] = c.color.getComponents(null); j++; }
-            for (int k=0; k<ctr; k++)
-            {vert[j][0]=(float)p[k].xyz.x;   vert[j][1]=(float)p[k].xyz.y;   vert[j][2]=(float)p[k].xyz.z;  
-            col[j] = p[k].color.getComponents(null); j++; }
-                      for (int k=0; k<ctr; k++)
-            {vert[j][0]=(float)q[k].xyz.x;   vert[j][1]=(float)q[k].xyz.y;   vert[j][2]=(float)q[k].xyz.z;  
-            col[j] = q[k].color.getComponents(null); j++; }
-                               for (int k=0; k<ctr; k++){                //18 facets per 6-sided bump
-               tri[t++]=C;              tri[t++]=Q+k;   tri[t++] = Q+((k+1)%ctr);   //inner tri
-               tri[t++]=Q+k;            tri[t++]=P+k;   tri[t++] = Q+((k+1)%ctr);   //middle
-               tri[t++]=Q+((k+1)%ctr);  tri[t++]=P+k;   tri[t++] = P+((k+1)%ctr);   //outer
-
-            }
-            int z=0; z++;
-         }
-         DisplayInfo ans = new DisplayInfo();         //pack it up to go
-         ans.vert = vert;  
-         ans.col = col;
-         ans.tri = tri;
-         ans.line = line;
-         return ans;
-      }
+      return engine.makeTexture(dispColor, dispTexture, nSmooth());
    }
   
 
+
    ///////////////////////////////// GUI  /////////////////////////////////////
    
 
@@ -1046,12 +827,7 @@ public class GrowthForm implements Runnable {
       if (gfsFileChooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION ) return;
       String gfsFileName = gfsFileChooser.getSelectedFile().getPath();
       try{
-         File gfFile = new File(gfsFileName);
-         BufferedReader br = new BufferedReader(new FileReader(gfFile));
-         StringBuffer txt = new StringBuffer();
-         while (br.ready()) {txt.append(br.readLine()); txt.append("\n");}
-         script.setText(txt.toString());
-         br.close();
+         script.setText(GrowthEngine.readScript(new File(gfsFileName)));
       }
       catch(Exception e){
          report("Error writing file " + gfsFileName);
@@ -1076,81 +852,44 @@ public class GrowthForm implements Runnable {
       }
    }
    
-   void exportBinarySTL(){              // TODO: use DataWriter instead
-     if (!displayReady) return;
+   //write the form, as displayed, to an STL file chosen by the user.  The
+   //file is streamed from the form on its own thread, so the GUI carries on
+   //and no DisplayInfo is needed.  Growth waits until it is written
+   void exportBinarySTL(){
+     if (!displayReady || exporting) return;
      if (stlFileChooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION ) return;
-     String stlFileName = stlFileChooser.getSelectedFile().getPath();
-     stlFileName = forceExtension(stlFileName, "stl");   // annex .stl if user didn't
-     FileOutputStream stlStream;
-     String headerText = "George W. Hart, www.georgehart.com";
-     byte[] headerBytes = new byte[headerText.length()];
-     for (int i=0; i<headerText.length(); i++)
-       headerBytes[i] = (byte) headerText.charAt(i);
-
-     try{
-       File stlFile = new File(stlFileName);
-       stlStream = new FileOutputStream(stlFile);
-     }
-     catch(FileNotFoundException e){
-       report("Error opening file " + stlFileName);
-       return;
-     }
-     try{
-       frame.getContentPane().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-       stlStream.write(headerBytes);                 // STL file header
-       for (int i=headerText.length(); i<80; i++)
-         stlStream.write((byte) 0);                  // pad to 80 chars
-       DisplayInfo d = getDisplayInfo();
-       int numTriangles = d.tri.length / 3;
-       stlStream.write((numTriangles>> 0) & 255);       // send out int as 4 bytes
-       stlStream.write((numTriangles>> 8) & 255);
-       stlStream.write((numTriangles>>16) & 255);
-       stlStream.write((numTriangles>>24) & 255);
-       int i=0;
-       while (i < d.tri.length) {
-          float[] p1 = d.vert[d.tri[i++]]; 
-          float[] p2 = d.vert[d.tri[i++]]; 
-          float[] p3 = d.vert[d.tri[i++]]; 
-          //XYZ normal = XYZ.unit(XYZ.cross(XYZ.minus(t.v2.xyz, t.v1.xyz), XYZ.minus(t.v3.xyz, t.v1.xyz)));
-          XYZ normal = new XYZ(0,0,0);                //this is OK for most 
-         binaryWrite((float) -normal.x, stlStream);
-         binaryWrite((float) normal.y, stlStream);
-         binaryWrite((float) normal.z, stlStream);
-         binaryWrite((float) -p1[0], stlStream);
-         binaryWrite((float) p1[1], stlStream);
-         binaryWrite((float) p1[2], stlStream);
-         binaryWrite((float) -p3[0], stlStream); // swapped
-         binaryWrite((float) p3[1], stlStream);
-         binaryWrite((float) p3[2], stlStream);
-         binaryWrite((float) -p2[0], stlStream);
-         binaryWrite((float) p2[1], stlStream);
-         binaryWrite((float) p2[2], stlStream);
-         stlStream.write((byte) 0);               // pad to 50 chars
-         stlStream.write((byte) 0);               // pad to 50 chars
-         if (i%300 == 0) {            //No show, since in GUI thread
-            progressBar.setValue((int)(100.0*((double)i/(double)d.tri.length)));
-         }
-       }
-       stlStream.close();
-         }
-     catch(IOException ex){
-       report("Error writing STL file " + stlFileName);
-       return;
-     }
-     finally{
-       progressBar.setValue(0);
-       frame.getContentPane().setCursor(null);
-       //Toolkit.getDefaultToolkit().beep();
-     }
+     String name = stlFileChooser.getSelectedFile().getPath();
+     final String stlFileName = forceExtension(name, "stl");   // annex .stl if user didn't
+     final Texture[] dispTexture = displayTexture();
+     final int nSmooth = nSmooth();
+     exporting = true;
+     frame.getContentPane().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+     new Thread(new Runnable() {
+        public void run() {
+           try{
+              engine.writeSTL(new File(stlFileName), dispTexture, nSmooth, "George W. Hart, www.georgehart.com", new ProgressListener() {
+                 public void progress(int percent) { showProgress(percent); }
+              });
+           }
+           catch(IOException ex){
+              report("Error writing STL file " + stlFileName);
+           }
+           finally{
+              showProgress(0);
+              SwingUtilities.invokeLater(new Runnable() {
+                 public void run() { frame.getContentPane().setCursor(null); }
+              });
+              exporting = false;
+           }
+        }
+     }, "STL export").start();
    }
 
-   // send out float as 4 bytes for STL binary format
-   void binaryWrite (float x, FileOutputStream stream) throws IOException{
-     int fourBytes = Float.floatToIntBits(x);
-     stream.write((fourBytes>> 0) & 255);
-     stream.write((fourBytes>> 8) & 255);
-     stream.write((fourBytes>>16) & 255);
-     stream.write((fourBytes>>24) & 255);
+   //update progress bar from any thread
+   void showProgress(final int percent){
+     SwingUtilities.invokeLater(new Runnable() {
+        public void run() { progressBar.setValue(percent); }
+     });
    }
 
    // annex given lower-case 3-letter extension to file name if user didn't
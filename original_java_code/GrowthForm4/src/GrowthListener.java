@@ -0,0 +1,12 @@
+//callbacks from a GrowthEngine to whoever is watching it, e.g., the GUI.
+//A headless engine runs with no listener at all.
+public interface GrowthListener {
+
+   //warning or error message for the user
+   public void report(String msg);
+
+   //one division done inside a multi-division command (blob, initial seed)
+   //gives a viewer the chance to show and record intermediate steps
+   public void afterDivision();
+
+}
@@ -0,0 +1,37 @@
+import java.util.Locale;
+
+//one script line compiled for the bud interpreter:  an opcode, its ints and
+//BudType, and for the direction commands the XYZ they use.  Made once from
+//a legal Parser, so running a line is a switch instead of string compares
+public class Instruction {
+
+   //one per command in GrowthEngine.COMMANDS, same names
+   enum Op {NOOP, GROW, SLEEP, GENERAL, FATNESS, SIZE, LINE, RING, FILL, SPAWN, TRAIL,
+      BECOME, REPEL, FREEZE, LARGER, SMALLER, INWARDS, OUTWARDS, DIE, UPWARDS,
+      DOWNWARDS, RADIAL, NOCOLLISIONCHECK, FLAT, SPIKE, BUMP, WEB, HAIRY, TEXTURE,
+      COLOR, MUSTFACE, HEADTOWARDS, BLOB, DISPERSE, TUBE}
+
+   final Op op;
+   final int arg1, arg2, arg3;
+   final BudType budType;     //for commands that name one, else null
+   final XYZ direction;       //for upwards, downwards, headtowards and mustface, else null
+
+   //compile a parsed line, which must be legal
+   public Instruction(Parser p) {
+      op = Op.valueOf(p.getCommandWord().toUpperCase(Locale.ROOT));   //not the user's locale:  no dotted I
+      arg1 = p.getArg1();
+      arg2 = p.getArg2();
+      arg3 = p.getArg3();
+      budType = p.getBudType();
+      if (op == Op.UPWARDS) direction = new XYZ(0,0,1);
+      else if (op == Op.DOWNWARDS) direction = new XYZ(0,0,-1);
+      else if (op == Op.HEADTOWARDS || op == Op.MUSTFACE) direction = new XYZ(arg1, arg2, arg3);
+      else direction = null;
+   }
+
+   //does the line start a run of divisions:  grow, sleep or general?
+   public boolean isGrowth() {
+      return op == Op.GROW || op == Op.SLEEP || op == Op.GENERAL;
+   }
+
+}
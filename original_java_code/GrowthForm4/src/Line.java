@@ -1,5 +1,4 @@
 import java.util.ArrayList;
-import java.util.Random;
 
 //data for a series of buds to form a line
 //not to exceed a target length
@@ -9,7 +8,6 @@ public class Line {
    int targetLength;    //0 (or 1) means no limit
    ArrayList<Bud> list; //list of buds in line order
    boolean trailFlag;         //are we trailing a bud that created us?
-   static Random rnd = new Random();
    
    //initially create a line of length 1 containing the given bud
    //it might be set to trail another bud, which is head of list
@@ -74,7 +72,7 @@ public class Line {
       else         list.add(iOld, newCell.bud);
 
       if (targetLength>0 && list.size()>targetLength){    //snip if needed
-         if (trailFlag || rnd.nextInt(2) == 0){       //randomly either:
+         if (trailFlag || oldCell.form.rnd.nextInt(2) == 0){       //randomly either:
             bt.removeBud(list.get(list.size()-1).cell);     //tail...
             list.remove(list.size()-1);
          }
@@ -1,4 +1,5 @@
 import java.util.List;
+import java.util.Locale;
 
 //anaylses one line of text and provides individual parts
 //reports "noop" for blank line or comment
@@ -6,13 +7,14 @@ public class Parser {
 
    private String commandWord;               //output of parser
    private int[] arg = new int[3];           //output of parser
+   private int nArgs;                        //how many ints were given
    private BudType argT;                     //output of parser
    private boolean legal;                    //true if given legal input
    private String errorExplanation;
    
    //input is list of token words, list of legal commands, and list of BudTypes
    public Parser(String line, String[] commands, List<BudType> budList) {
-      String cmd = line.trim().toLowerCase();
+      String cmd = line.trim().toLowerCase(Locale.ROOT);
       int commentIndex = cmd.indexOf("/");     //strip inline comments
       if (commentIndex >= 0) cmd = cmd.substring(0, commentIndex);
       if (cmd.length() == 0 || wordColon(cmd)!=null) {  
@@ -49,7 +51,8 @@ public class Parser {
          if (offset!=1) {error("Not a BudType: " + word[1]); return;}
       }
       
-      int nArgs = word.length-1 - offset;           //cmd should have some ints after it
+      nArgs = word.length-1 - offset;               //cmd should have some ints after it
+      if (nArgs > arg.length) {error("Too many ints after " + wd); return;}
       for (int i=0; i<nArgs; i++){
          try {
             arg[i] = Integer.parseInt(word[i+1+offset]);
@@ -103,6 +106,10 @@ public class Parser {
       return arg[2];
    }
    
+   public int getNArgs() {
+      return nArgs;
+   }
+   
    public BudType getBudType() {
       return argT;
    }
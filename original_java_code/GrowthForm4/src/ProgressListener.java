@@ -0,0 +1,8 @@
+//told how far along a long job is, e.g., an STL export on its own thread.
+//Called on the job's thread, so a GUI must pass the value to its own thread
+public interface ProgressListener {
+
+   //percent done, 0 to 100.  only called when the value changes
+   public void progress(int percent);
+
+}
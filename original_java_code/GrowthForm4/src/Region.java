@@ -0,0 +1,101 @@
+import java.util.Arrays;
+
+//the cells within a few hops of one cell, with their hop distances.
+//Stored as sorted cell indices plus a parallel array of byte hop counts,
+//about a tenth of the memory of a Map<Cell, Integer>, and cheap to scan.
+//Indices are positions in form.cell, so Form.removeCell() must rename us.
+public class Region {
+
+   int[] index;        //cell indices, ascending.  only the first size are used
+   byte[] hops;        //hop distance to each of those cells
+   int size;           //# cells in region
+   private static final int[] NO_INDEX = new int[0];
+   private static final byte[] NO_HOPS = new byte[0];
+
+   //empty region
+   public Region() {
+      index = NO_INDEX;
+      hops = NO_HOPS;
+      size = 0;
+   }
+
+   //replace contents with n (index, hops) pairs packed as index<<8 | hops.
+   //the packed array is sorted in place, then copied, so it can be scratch space
+   public void set(long[] packed, int n){
+      Arrays.sort(packed, 0, n);
+      if (index.length < n){
+         index = new int[n];
+         hops = new byte[n];
+      }
+      for (int i=0; i<n; i++) {
+         index[i] = (int) (packed[i] >> 8);
+         hops[i] = (byte) (packed[i] & 0xFF);
+      }
+      size = n;
+   }
+
+   public int size(){
+      return size;
+   }
+
+   //hop distance to given cell index, or -1 if not in region
+   public int get(int cellIndex){
+      int i = Arrays.binarySearch(index, 0, size, cellIndex);
+      return (i < 0) ? -1 : hops[i];
+   }
+
+   public boolean contains(int cellIndex){
+      return Arrays.binarySearch(index, 0, size, cellIndex) >= 0;
+   }
+
+   //add cell index with given hops, or change its hops if already there
+   public void put(int cellIndex, int d){
+      int i = Arrays.binarySearch(index, 0, size, cellIndex);
+      if (i >= 0) {
+         hops[i] = (byte) d;
+         return;
+      }
+      i = -i-1;                          //insertion point
+      if (size == index.length) {        //grow arrays
+         int cap = Math.max(8, 2*size);
+         index = Arrays.copyOf(index, cap);
+         hops = Arrays.copyOf(hops, cap);
+      }
+      System.arraycopy(index, i, index, i+1, size-i);
+      System.arraycopy(hops, i, hops, i+1, size-i);
+      index[i] = cellIndex;
+      hops[i] = (byte) d;
+      size++;
+   }
+
+   //cell at oldIndex is now at newIndex:  same hops, kept sorted
+   public void rename(int oldIndex, int newIndex){
+      int d = get(oldIndex);
+      if (d < 0) return;
+      remove(oldIndex);
+      put(newIndex, d);
+   }
+
+   //drop given cell index if present
+   public void remove(int cellIndex){
+      int i = Arrays.binarySearch(index, 0, size, cellIndex);
+      if (i < 0) return;
+      System.arraycopy(index, i+1, index, i, size-i-1);
+      System.arraycopy(hops, i+1, hops, i, size-i-1);
+      size--;
+   }
+
+   public void clear(){
+      size = 0;
+   }
+
+   public String toString(){
+      StringBuffer ans = new StringBuffer("{");
+      for (int i=0; i<size; i++){
+         if (i > 0) ans.append(", ");
+         ans.append("Cell" + index[i] + "=" + hops[i]);
+      }
+      return ans.append("}").toString();
+   }
+
+}
@@ -0,0 +1,86 @@
+//scratch space for breadth first searches over a form's cells, reused so a
+//search allocates nothing.  The form has one for its own searches, and one
+//per worker when regions are repaired in parallel (see Form.divideAll).
+//Cell i is visited in the current search if visit[i]==epoch, at visitHops[i] hops
+public class RegionSearch {
+
+   int[] visit = new int[0];
+   int[] visitHops = new int[0];
+   int epoch = 0;
+   int[] queue = new int[0];      //BFS queue of cell indices
+   int qHead, qTail;
+   long[] found = new long[0];    //(index, hops) pairs for the new region
+   int nFound;
+
+   //begin a new search over n cells with empty queue and nothing visited
+   void start(int n){
+      if (visit.length < n){               //room for every cell
+         int cap = Math.max(64, 2*n);
+         visit = new int[cap];
+         visitHops = new int[cap];
+         queue = new int[cap];
+         found = new long[cap];
+         epoch = 0;
+      }
+      epoch++;
+      qHead = qTail = nFound = 0;
+   }
+
+   //record cell i as visited at given hops
+   void reach(int i, int hops){
+      visit[i] = epoch;
+      visitHops[i] = hops;
+      found[nFound++] = ((long) i << 8) | hops;
+   }
+
+   void enqueue(int i){
+      queue[qTail++] = i;
+   }
+
+   //BFS from the queued cells, recording new cells out to maxDepth hops
+   void search(Form f, int maxDepth){
+      while (qHead < qTail){
+         Cell c = f.cell.get(queue[qHead++]);      //dequeue
+         int d = visitHops[c.index] + 1;           //neighbors are 1 hop further
+         for (Cell u : c.adj)
+            if (visit[u.index] != epoch){          //if new...
+               reach(u.index, d);
+               if (d < maxDepth) enqueue(u.index); //more to do
+            }
+      }
+   }
+
+   //BFS to construct local region and hop distances based on topology
+   void calcRegion(Form f, Cell v0, int maxDepth) {
+      start(f.cell.size());
+      reach(v0.index, 0);                //we are dist 0 from us
+      if (maxDepth > 0) enqueue(v0.index);
+      search(f, maxDepth);
+      v0.region.set(found, nFound);
+   }
+
+   //Cell v has just split into v and a new sibling, which can only make
+   //hop distances through v grow, by 1 at most.  Fix the region of cell u,
+   //which was d hops from v.  A cell less than d hops from u can't have a
+   //shortest path through v, and neither can another cell at d hops, so
+   //those keep their distances and we search outward from hop d-1 only.
+   void repairRegion(Form f, Cell u, Cell v, int d, int maxDepth) {
+      if (d == 0) {                      //u is v itself: everything may change
+         calcRegion(f, u, maxDepth);
+         return;
+      }
+      Region r = u.region;
+      start(f.cell.size());
+      for (int i=0; i<r.size; i++)       //unchanged near part
+         if (r.hops[i] < d || (r.hops[i] == d && r.index[i] != v.index))
+            reach(r.index[i], r.hops[i]);
+      for (int i=0; i<r.size; i++)       //search from hop d-1 (finds v, sib at d)...
+         if (r.hops[i] == d-1) enqueue(r.index[i]);
+      if (d < maxDepth)                  //...and on from hop d, in BFS order
+         for (int i=0; i<r.size; i++)
+            if (r.hops[i] == d && r.index[i] != v.index) enqueue(r.index[i]);
+      search(f, maxDepth);
+      r.set(found, nFound);
+   }
+
+}
@@ -1,8 +1,7 @@
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
-//TODO: BUG: list not necessarily in cyclic order, given Map in constructor
+//TODO: BUG: list not necessarily in cyclic order, given region order in constructor
 //FIX by sorting in constructor or modifying maintain()
 
 //like Line, but no length limit and do index calcs modulo the length
@@ -26,12 +25,14 @@ public class Ring {
 //   }
 
    
-   //distance k from bud.  Caller provides region mapping
-   public Ring(Map<Cell, Integer>region, int k, BudType bt){
+   //distance k from bud in given center cell, found from its region
+   public Ring(Cell center, int k, BudType bt){
       this.bt = bt;
       list = new ArrayList<Bud>();
-      for (Cell c : region.keySet()){
-         if (region.get(c) == k){
+      Region region = center.region;
+      for (int i=0; i<region.size; i++){
+         if (region.hops[i] == k){
+            Cell c = center.form.cell.get(region.index[i]);
             if (c.isBud()) c.bud.budType.removeBud(c);
             if (bt.createBud(c)){    //if successful
                list.add(c.bud);
@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//uniform grid of cubic voxels, each listing the cells whose xyz is inside it.
+//Lets us find cells near a point without looking at every cell of the form.
+//Cells report each move; translating the whole form only changes our
+//offset, so Form.center() does not need to re-bucket anything.
+public class SpatialGrid {
+
+   private double size;                        //edge length of a voxel
+   private double offsetX, offsetY, offsetZ;   //translation of form since cells were bucketed
+   private Map<Long, List<Cell>> voxel;        //nonempty voxels, by packed coords
+
+   public SpatialGrid(double size) {
+      this.size = size;
+      voxel = new HashMap<Long, List<Cell>>();
+   }
+
+   //put a cell in the voxel for its current xyz
+   public void add(Cell c){
+      c.voxelKey = key(c);
+      List<Cell> list = voxel.get(c.voxelKey);
+      if (list == null){
+         list = new ArrayList<Cell>(4);
+         voxel.put(c.voxelKey, list);
+      }
+      list.add(c);
+   }
+
+   //take a cell out of its voxel
+   public void remove(Cell c){
+      List<Cell> list = voxel.get(c.voxelKey);
+      if (list == null || !list.remove(c)) throw new IllegalArgumentException("Grid bug 1");
+      if (list.isEmpty()) voxel.remove(c.voxelKey);
+   }
+
+   //cell's xyz has changed.  re-bucket it if it left its voxel
+   public void move(Cell c){
+      if (key(c) == c.voxelKey) return;      //usual case, still inside
+      remove(c);
+      add(c);
+   }
+
+   //every cell moved by delta
+   public void translate(double dx, double dy, double dz){
+      offsetX += dx;
+      offsetY += dy;
+      offsetZ += dz;
+   }
+
+   //some cell within distance tol of c that is not in c's region, or null if none
+   public Cell nearOutsideRegion(Cell c, double tol){
+      int r = (int) Math.ceil(tol/size);         //# voxels to look in each direction
+      long ix = coord(c.x() - offsetX);
+      long iy = coord(c.y() - offsetY);
+      long iz = coord(c.z() - offsetZ);
+      for (long i=ix-r; i<=ix+r; i++)
+         for (long j=iy-r; j<=iy+r; j++)
+            for (long k=iz-r; k<=iz+r; k++){
+               List<Cell> list = voxel.get(pack(i, j, k));
+               if (list == null) continue;
+               for (Cell v : list)
+                  if (c.dist2To(v) < tol*tol && !c.region.contains(v.index)) return v;
+            }
+      return null;
+   }
+
+   //how many nonempty voxels
+   public int countVoxels(){
+      return voxel.size();
+   }
+
+   private long key(Cell c){
+      return pack(coord(c.x() - offsetX), coord(c.y() - offsetY), coord(c.z() - offsetZ));
+   }
+
+   private long coord(double a){
+      return (long) Math.floor(a/size);
+   }
+
+   //21 bits per axis, which is plenty for any form we can grow
+   private static long pack(long i, long j, long k){
+      return ((i & 0x1FFFFF) << 42) | ((j & 0x1FFFFF) << 21) | (k & 0x1FFFFF);
+   }
+
+}
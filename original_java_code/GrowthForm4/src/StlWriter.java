@@ -0,0 +1,108 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+//binary STL file: 80 byte header, int facet count, then 50 bytes per facet
+//(normal, 3 corners, 2 unused bytes), all little-endian.  Facets are packed
+//into a direct buffer and go to the file thousands at a time.  The count
+//is filled in by close(), so facets can be streamed without knowing it.
+public class StlWriter {
+
+   final static int HEADER_BYTES = 80;
+   final static int FACET_BYTES = 50;
+   final static int FACETS_PER_WRITE = 1 << 14;     //about 800K per write
+
+   private FileChannel channel;
+   private ByteBuffer buf;          //facets not yet written
+   private long expected;           //# facets we expect, for progress only
+   private long count;              //# facets so far
+   private ProgressListener progress;    //may be null
+   private int percent = -1;        //last percent reported
+
+   //open file and write header.  expected facet count is only used for
+   //progress reports, which go to the given listener (may be null)
+   public StlWriter(File file, String header, long expected, ProgressListener progress) throws IOException {
+      this.expected = expected;
+      this.progress = progress;
+      channel = new FileOutputStream(file).getChannel();
+      buf = ByteBuffer.allocateDirect(FACETS_PER_WRITE * FACET_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      for (int i=0; i<HEADER_BYTES; i++)            //header text padded with 0's
+         buf.put(i < header.length() ? (byte) header.charAt(i) : 0);
+      buf.putInt(0);                                //count, filled in at close
+   }
+
+   //add one facet with corners counterclockwise seen from outside.
+   //its normal is computed from the corners
+   public void facet(float x1, float y1, float z1, float x2, float y2, float z2, float x3, float y3, float z3)
+         throws IOException {
+      float ux = x2-x1, uy = y2-y1, uz = z2-z1;
+      float vx = x3-x1, vy = y3-y1, vz = z3-z1;
+      float nx = uy*vz - uz*vy;             //u cross v
+      float ny = uz*vx - ux*vz;
+      float nz = ux*vy - uy*vx;
+      float m = (float) Math.sqrt(nx*nx + ny*ny + nz*nz);
+      if (m > 0) {
+         nx /= m;
+         ny /= m;
+         nz /= m;
+      }
+      if (buf.remaining() < FACET_BYTES) flush();
+      buf.putFloat(nx).putFloat(ny).putFloat(nz);
+      buf.putFloat(x1).putFloat(y1).putFloat(z1);
+      buf.putFloat(x2).putFloat(y2).putFloat(z2);
+      buf.putFloat(x3).putFloat(y3).putFloat(z3);
+      buf.putShort((short) 0);
+      count++;
+   }
+
+   //write out the rest, fill in the facet count, and close the file
+   public void close() throws IOException {
+      try {
+         flush();
+         buf.putInt((int) count).flip();
+         channel.write(buf, HEADER_BYTES);
+      }
+      finally {
+         channel.close();
+      }
+   }
+
+   //# facets so far
+   public long getCount(){
+      return count;
+   }
+
+   private void flush() throws IOException {
+      buf.flip();
+      while (buf.hasRemaining()) channel.write(buf);
+      buf.clear();
+      if (progress != null && expected > 0){
+         int p = (int) Math.min(100, 100*count/expected);
+         if (p != percent) progress.progress(p);
+         percent = p;
+      }
+   }
+
+   //write all the triangles of a DisplayInfo.  x is flipped and corners
+   //reordered to match the handedness of the GL view
+   public static void write(File file, DisplayInfo d, String header, ProgressListener progress)
+         throws IOException {
+      StlWriter w = new StlWriter(file, header, d.nTri, progress);
+      float[] v = d.vert;
+      try {
+         for (int i=0; i<3*d.nTri; i+=3){
+            int p1 = 3*d.tri[i];
+            int p2 = 3*d.tri[i+1];
+            int p3 = 3*d.tri[i+2];
+            w.facet(-v[p1], v[p1+1], v[p1+2], -v[p3], v[p3+1], v[p3+2], -v[p2], v[p2+1], v[p2+2]);
+         }
+      }
+      finally {
+         w.close();
+      }
+   }
+
+}
@@ -0,0 +1,49 @@
+//read-only copy of a form's adj lists in compressed sparse rows, for
+//passes over the whole mesh: smoothing, display, STL export, bud distances.
+//The neighbors of cell i are to[start[i]] .. to[start[i+1]-1], in the ccw
+//order of its adj list.  It is all in two int arrays, so a pass reads memory
+//in order instead of chasing Cells.  It is not for navigating:  growth
+//(Cell.next/prev/opp, split, tube, Line, Ring) works on the adj lists, and
+//Form.topology() rebuilds us from them after the form's topology changes.
+public class Topology {
+
+   int n;                       //# cells
+   int[] start = new int[1];    //where each cell's neighbors start in to.  start[n] = to's length
+   int[] to = new int[0];       //neighbor indices, cell by cell
+   int topoCount = -1;          //form's topoCount when built
+
+   //rebuild from the form's adj lists.  O(# neighbor entries), arrays reused
+   void build(Form f){
+      n = f.cell.size();
+      if (start.length < n+1) start = new int[Math.max(64, 2*n) + 1];
+      int m = 0;
+      for (int i=0; i<n; i++){
+         start[i] = m;
+         m += f.cell.get(i).adj.size();
+      }
+      start[n] = m;
+      if (to.length < m) to = new int[Math.max(64, 2*m)];
+      for (int i=0; i<n; i++){
+         int h = start[i];
+         for (Cell u : f.cell.get(i).adj) to[h++] = u.index;
+      }
+      topoCount = f.topoCount;
+   }
+
+   //make us the same as t, e.g. for a copy to read once the form changes
+   void copy(Topology t){
+      n = t.n;
+      if (start.length < n+1) start = new int[Math.max(64, 2*n) + 1];
+      System.arraycopy(t.start, 0, start, 0, n+1);
+      int m = t.start[n];
+      if (to.length < m) to = new int[Math.max(64, 2*m)];
+      System.arraycopy(t.to, 0, to, 0, m);
+      topoCount = t.topoCount;
+   }
+
+   //# neighbors of cell i
+   public int degree(int i){
+      return start[i+1] - start[i];
+   }
+
+}